@@ -0,0 +1,98 @@
+package com.guichaguri.trackplayer.service;
+
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.media.session.PlaybackStateCompat;
+import com.guichaguri.trackplayer.module.MusicEvents;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks how {@link EventPipeline} coalesces the playback state events.
+ *
+ * The pipeline is used from the main thread, as its handler needs a looper.
+ * The window is flushed manually, so the tests don't depend on timing.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class EventPipelineTest {
+
+    private final List<String> events = new ArrayList<>();
+    private final List<Bundle> data = new ArrayList<>();
+    private EventPipeline pipeline;
+
+    @Before
+    public void setUp() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            pipeline = new EventPipeline((event, bundle) -> {
+                events.add(event);
+                data.add(bundle);
+            });
+            pipeline.setWindow(10000);
+        });
+    }
+
+    @Test
+    public void testSeekWithinWindow() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            pipeline.emit(MusicEvents.PLAYBACK_STATE, state(PlaybackStateCompat.STATE_PLAYING, 10, 1000));
+            pipeline.flush();
+
+            // Seeks forward, buffering and playing again before the window ends
+            pipeline.emit(MusicEvents.PLAYBACK_STATE, state(PlaybackStateCompat.STATE_BUFFERING, 60, 1100));
+            pipeline.emit(MusicEvents.PLAYBACK_STATE, state(PlaybackStateCompat.STATE_PLAYING, 60, 1200));
+            pipeline.flush();
+        });
+
+        assertEquals(2, events.size());
+        assertEquals(MusicEvents.PLAYBACK_STATE, events.get(1));
+        assertEquals(PlaybackStateCompat.STATE_PLAYING, data.get(1).getInt("state"));
+        assertEquals(60, data.get(1).getDouble("position"), 0);
+    }
+
+    @Test
+    public void testUnchangedPlayback() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            pipeline.emit(MusicEvents.PLAYBACK_STATE, state(PlaybackStateCompat.STATE_PLAYING, 10, 1000));
+            pipeline.flush();
+
+            // Buffers briefly without moving, ending where the delivered state predicts
+            pipeline.emit(MusicEvents.PLAYBACK_STATE, state(PlaybackStateCompat.STATE_BUFFERING, 10.5, 1500));
+            pipeline.emit(MusicEvents.PLAYBACK_STATE, state(PlaybackStateCompat.STATE_PLAYING, 11, 2000));
+            pipeline.flush();
+        });
+
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    public void testRateChange() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            pipeline.emit(MusicEvents.PLAYBACK_STATE, state(PlaybackStateCompat.STATE_PLAYING, 10, 1000));
+            pipeline.flush();
+
+            Bundle faster = state(PlaybackStateCompat.STATE_PLAYING, 11, 2000);
+            faster.putDouble("rate", 2);
+            pipeline.emit(MusicEvents.PLAYBACK_STATE, faster);
+            pipeline.flush();
+        });
+
+        assertEquals(2, events.size());
+        assertEquals(2, data.get(1).getDouble("rate"), 0);
+    }
+
+    private static Bundle state(int state, double position, double timestamp) {
+        Bundle bundle = new Bundle();
+        bundle.putInt("state", state);
+        bundle.putDouble("position", position);
+        bundle.putDouble("rate", 1);
+        bundle.putDouble("timestamp", timestamp);
+        return bundle;
+    }
+
+}
@@ -0,0 +1,252 @@
+package com.guichaguri.trackplayer.util;
+
+import android.net.Uri;
+import android.os.Build;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.FileDataSource;
+import com.guichaguri.trackplayer.service.Utils;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Measures the throughput of {@link FileDecryptionDataSource} against a plain {@link FileDataSource}.
+ *
+ * Runs on a device as an instrumented test, with {@code ./gradlew connectedAndroidTest}.
+ * Every I/O mode is measured in each scenario, with and without parallel decryption, and the results are logged.
+ * The decrypted block cache is disabled, so repeated runs don't measure cache hits.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class DecryptionBenchmark {
+
+    private static final int FILE_SIZE = 8 * 1024 * 1024;
+    private static final int ITERATIONS = 5;
+
+    public enum Scenario {
+        /**
+         * Reads the whole file in 4 KB reads, like the extractors do while playing
+         */
+        SEQUENTIAL,
+        /**
+         * Opens the file at random positions, reading 16 KB each time, like seeking does
+         */
+        RANDOM_SEEKS,
+        /**
+         * Reads the first 64 KB in 8 byte reads, like the extractors do while parsing headers
+         */
+        SMALL_READS,
+        /**
+         * Reads the whole file in 512 KB reads, like the initial buffering does
+         */
+        LARGE_READS
+    }
+
+    public static final class Result {
+
+        public final Scenario scenario;
+        public final String source;
+        public final long bytes;
+        public final long reads;
+        public final long nanos;
+        /**
+         * The objects allocated by the whole process, or -1 when it can't be measured
+         */
+        public final long allocations;
+
+        Result(Scenario scenario, String source, long bytes, long reads, long nanos, long allocations) {
+            this.scenario = scenario;
+            this.source = source;
+            this.bytes = bytes;
+            this.reads = reads;
+            this.nanos = nanos;
+            this.allocations = allocations;
+        }
+
+        /**
+         * Gets the throughput in megabytes per second
+         */
+        public double getThroughput() {
+            return nanos == 0 ? 0 : (bytes / (1024.0 * 1024.0)) / (nanos / 1e9);
+        }
+
+        public double getAllocationsPerRead() {
+            return reads == 0 || allocations < 0 ? 0 : (double)allocations / reads;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s: %.2f MB/s, %.3f allocations per read",
+                    scenario, source, getThroughput(), getAllocationsPerRead());
+        }
+
+    }
+
+    private static final int SEEKS = 64;
+
+    @Test
+    public void benchmark() throws IOException {
+        File file = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "benchmark.bin");
+        byte[] data = new byte[FILE_SIZE];
+        new Random(0).nextBytes(data);
+
+        OutputStream out = new FileOutputStream(file);
+
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+
+        try {
+            // A cheap position independent cipher, so the I/O overhead is visible
+            Decrypter decrypter = uri -> (SplittableCipherContext)(buffer, offset, length, position) -> {
+                for(int i = offset; i < offset + length; i++) buffer[i] ^= 0x5A;
+            };
+
+            assertFalse(run(file, decrypter, ITERATIONS).isEmpty());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Runs every scenario for the file
+     *
+     * @param decrypter The decrypter to measure, or {@code null} to only measure the I/O
+     * @param iterations How many times each scenario is repeated, the first run is a warm up
+     */
+    public static List<Result> run(File file, Decrypter decrypter, int iterations) throws IOException {
+        List<Result> results = new ArrayList<>();
+        Uri uri = Uri.fromFile(file);
+
+        // Every run has to read the file instead of the decrypted blocks kept by previous runs
+        DecryptedBlockCache.INSTANCE.setMaxSize(0);
+
+        for(Scenario scenario : Scenario.values()) {
+            results.add(measure(scenario, "file", new FileDataSource(), uri, iterations));
+
+            for(FileDecryptionDataSource.IoMode mode : FileDecryptionDataSource.IoMode.values()) {
+                for(boolean parallel : new boolean[]{false, true}) {
+                    // Parallel decryption makes no difference without a decrypter
+                    if(parallel && decrypter == null) continue;
+
+                    DataSource ds = new FileDecryptionDataSource(decrypter, null, decrypter != null, mode,
+                            FileDecryptionDataSource.DEFAULT_BLOCK_SIZE, parallel);
+                    String name = mode.name().toLowerCase() + (parallel ? "+parallel" : "");
+
+                    results.add(measure(scenario, name, ds, uri, iterations));
+                }
+            }
+        }
+
+        for(Result result : results) {
+            Log.i(Utils.LOG, result.toString());
+        }
+
+        return results;
+    }
+
+    private static Result measure(Scenario scenario, String name, DataSource ds, Uri uri, int iterations) throws IOException {
+        // Warms up the file system cache and the JIT
+        run(scenario, ds, uri);
+
+        long bytes = 0, reads = 0, nanos = 0, allocations = 0;
+
+        for(int i = 0; i < iterations; i++) {
+            DecryptedBlockCache.INSTANCE.clear();
+
+            long allocated = getAllocatedObjects();
+            long start = System.nanoTime();
+
+            long[] run = run(scenario, ds, uri);
+
+            nanos += System.nanoTime() - start;
+            allocations = allocated < 0 ? -1 : allocations + getAllocatedObjects() - allocated;
+
+            bytes += run[0];
+            reads += run[1];
+        }
+
+        return new Result(scenario, name, bytes, reads, nanos, allocations);
+    }
+
+    /**
+     * Gets the amount of objects allocated by the process so far, or -1 when the runtime doesn't report it
+     */
+    private static long getAllocatedObjects() {
+        if(Build.VERSION.SDK_INT < Build.VERSION_CODES.M) return -1;
+
+        try {
+            return Long.parseLong(Debug.getRuntimeStat("art.gc.objects-allocated"));
+        } catch(NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return The amount of bytes and reads
+     */
+    private static long[] run(Scenario scenario, DataSource ds, Uri uri) throws IOException {
+        long[] total = new long[2];
+
+        switch(scenario) {
+            case SEQUENTIAL:
+                read(ds, new DataSpec(uri), new byte[4 * 1024], C.LENGTH_UNSET, total);
+                break;
+            case RANDOM_SEEKS:
+                long length = new File(uri.getPath()).length();
+                Random random = new Random(0);
+                byte[] buffer = new byte[4 * 1024];
+
+                for(int i = 0; i < SEEKS; i++) {
+                    long position = (long)(random.nextDouble() * length);
+                    read(ds, new DataSpec(uri, position, C.LENGTH_UNSET, null), buffer, 16 * 1024, total);
+                }
+                break;
+            case SMALL_READS:
+                read(ds, new DataSpec(uri), new byte[8], 64 * 1024, total);
+                break;
+            case LARGE_READS:
+                read(ds, new DataSpec(uri), new byte[512 * 1024], C.LENGTH_UNSET, total);
+                break;
+        }
+
+        return total;
+    }
+
+    private static void read(DataSource ds, DataSpec spec, byte[] buffer, long limit, long[] total) throws IOException {
+        try {
+            ds.open(spec);
+
+            long read = 0;
+
+            while(limit == C.LENGTH_UNSET || read < limit) {
+                int length = (int)(limit == C.LENGTH_UNSET ? buffer.length : Math.min(buffer.length, limit - read));
+                int count = ds.read(buffer, 0, length);
+                if(count == C.RESULT_END_OF_INPUT) break;
+
+                read += count;
+                total[1]++;
+            }
+
+            total[0] += read;
+        } finally {
+            ds.close();
+        }
+    }
+
+}
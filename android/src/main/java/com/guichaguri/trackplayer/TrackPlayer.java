@@ -1,10 +1,15 @@
 package com.guichaguri.trackplayer;
 
+import android.net.Uri;
 import com.facebook.react.ReactPackage;
 import com.facebook.react.bridge.NativeModule;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.uimanager.ViewManager;
 import com.guichaguri.trackplayer.module.MusicModule;
+import com.guichaguri.trackplayer.util.CipherContext;
+import com.guichaguri.trackplayer.util.Decrypter;
+import com.guichaguri.trackplayer.util.DecrypterProvider;
+import com.guichaguri.trackplayer.util.SplittableCipherContext;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -16,7 +21,12 @@ import java.util.List;
  *
  * @author Guichaguri
  */
-public class TrackPlayer implements ReactPackage {
+public class TrackPlayer implements ReactPackage, Decrypter {
+
+    public TrackPlayer() {
+        // Subclasses implement the decryption, so local files are decrypted through them
+        if(getClass() != TrackPlayer.class) DecrypterProvider.register(this);
+    }
 
     @Override
     public List<NativeModule> createNativeModules(ReactApplicationContext reactContext) {
@@ -28,8 +38,33 @@ public class TrackPlayer implements ReactPackage {
         return Collections.emptyList();
     }
 
+    /**
+     * Decrypts the data in place, regardless of its position in the file
+     */
     public void decrypt(byte[] bytes, int offset, int length) {
 
     }
 
+    /**
+     * Whether {@link #decrypt(byte[], int, int)} can be called concurrently for different ranges of the same read.
+     * Override it to return {@code true} when it's thread-safe and doesn't depend on the data before each range,
+     * which allows the parallelDecryption option to split large reads
+     */
+    protected boolean isDecryptSplittable() {
+        return false;
+    }
+
+    /**
+     * Creates the context that decrypts a local file, called every time the file is opened.
+     * Override it to decrypt based on the position of the data, such as with AES-CTR.
+     * By default, the data is decrypted through {@link #decrypt(byte[], int, int)} regardless of its position
+     */
+    @Override
+    public CipherContext createCipherContext(Uri uri) {
+        if(isDecryptSplittable()) {
+            return (SplittableCipherContext)(buffer, offset, length, position) -> decrypt(buffer, offset, length);
+        }
+        return (buffer, offset, length, position) -> decrypt(buffer, offset, length);
+    }
+
 }
@@ -8,6 +8,7 @@ import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactContext;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule.RCTDeviceEventEmitter;
+import javax.annotation.Nullable;
 
 /**
  * @author Guichaguri
@@ -34,7 +35,12 @@ public class MusicEvents extends BroadcastReceiver {
     public static final String PLAYBACK_TRACK_CHANGED = "playback-track-changed";
     public static final String PLAYBACK_QUEUE_ENDED = "playback-queue-ended";
     public static final String PLAYBACK_ERROR = "playback-error";
+    public static final String PLAYBACK_PROGRESS = "playback-progress";
     public static final String PLAYBACK_UNBIND = "playback-unbind";
+    public static final String PLAYBACK_BATCH = "playback-batch";
+
+    // Download Events
+    public static final String DOWNLOAD_STATE = "download-state";
 
     private final ReactContext reactContext;
 
@@ -42,14 +48,25 @@ public class MusicEvents extends BroadcastReceiver {
         this.reactContext = reactContext;
     }
 
-    @Override
-    public void onReceive(Context context, Intent intent) {
-        String event = intent.getStringExtra("event");
-        Bundle data = intent.getBundleExtra("data");
+    /**
+     * Whether events can be sent to JS right now
+     */
+    public boolean isActive() {
+        return reactContext.hasActiveCatalystInstance();
+    }
 
+    /**
+     * Sends the event straight to JS
+     */
+    public void emit(String event, @Nullable Bundle data) {
         WritableMap map = data != null ? Arguments.fromBundle(data) : null;
 
         reactContext.getJSModule(RCTDeviceEventEmitter.class).emit(event, map);
     }
 
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        emit(intent.getStringExtra("event"), intent.getBundleExtra("data"));
+    }
+
 }
@@ -13,9 +13,16 @@ import android.util.Log;
 import com.facebook.react.bridge.*;
 import com.google.android.exoplayer2.C;
 import com.guichaguri.trackplayer.service.MusicBinder;
+import com.guichaguri.trackplayer.service.MusicManager;
 import com.guichaguri.trackplayer.service.MusicService;
 import com.guichaguri.trackplayer.service.Utils;
+import com.guichaguri.trackplayer.service.metadata.SimpleCacheManager;
 import com.guichaguri.trackplayer.service.models.Track;
+import com.guichaguri.trackplayer.service.models.TrackQueue;
+import com.guichaguri.trackplayer.service.models.TrackType;
+import com.guichaguri.trackplayer.service.player.ExoPlayback;
+import com.guichaguri.trackplayer.service.player.LocalPlayback;
+import com.guichaguri.trackplayer.service.player.TrackDownloader;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -58,6 +65,8 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
         if(eventHandler != null) {
             LocalBroadcastManager manager = LocalBroadcastManager.getInstance(context);
 
+            if(binder != null) binder.detachEmitter(eventHandler);
+
             manager.unregisterReceiver(eventHandler);
             eventHandler = null;
         }
@@ -68,6 +77,9 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
         binder = (MusicBinder)service;
         connecting = false;
 
+        // Receives the events directly while connected
+        if(eventHandler != null) binder.attachEmitter(eventHandler);
+
         // Triggers all callbacks
         while(!initCallbacks.isEmpty()) {
             binder.post(initCallbacks.remove());
@@ -154,6 +166,7 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
     public void destroy() {
         try {
             if(binder != null) {
+                if(eventHandler != null) binder.detachEmitter(eventHandler);
                 binder.destroy();
                 binder = null;
             }
@@ -180,73 +193,88 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
     public void add(ReadableArray tracks, final String insertBeforeId, final Promise callback) {
         final ArrayList bundleList = Arguments.toList(tracks);
 
-        waitForConnection(() -> {
-            List<Track> trackList;
+        waitForConnection(() -> addTracks(bundleList, insertBeforeId, callback));
+    }
 
-            try {
-                trackList = Track.createTracks(getReactApplicationContext(), bundleList, binder.getRatingType());
-            } catch(Exception ex) {
-                callback.reject("invalid_track_object", ex);
-                return;
-            }
+    private void addTracks(List bundleList, String insertBeforeId, Promise callback) {
+        List<Track> trackList;
 
-            List<Track> queue = binder.getPlayback().getQueue();
-            int index = -1;
+        try {
+            trackList = Track.createTracks(getReactApplicationContext(), bundleList, binder.getRatingType());
+        } catch(Exception ex) {
+            callback.reject("invalid_track_object", ex);
+            return;
+        }
 
-            if(insertBeforeId != null) {
-                for(int i = 0; i < queue.size(); i++) {
-                    if(queue.get(i).id.equals(insertBeforeId)) {
-                        index = i;
-                        break;
-                    }
-                }
-            } else {
-                index = queue.size();
-            }
+        TrackQueue queue = binder.getPlayback().getQueue();
+        int index = insertBeforeId != null ? queue.indexOf(insertBeforeId) : queue.size();
 
-            if(index == -1) {
-                callback.reject("track_not_in_queue", "Given track ID was not found in queue");
-            } else if(trackList == null || trackList.isEmpty()) {
-                callback.reject("invalid_track_object", "Track is missing a required key");
-            } else if(trackList.size() == 1) {
-                binder.getPlayback().add(trackList.get(0), index, callback);
-            } else {
-                binder.getPlayback().add(trackList, index, callback);
-            }
-        });
+        if(index == -1) {
+            callback.reject("track_not_in_queue", "Given track ID was not found in queue");
+        } else if(trackList == null || trackList.isEmpty()) {
+            callback.reject("invalid_track_object", "Track is missing a required key");
+        } else if(trackList.size() == 1) {
+            binder.getPlayback().add(trackList.get(0), index, callback);
+        } else {
+            binder.getPlayback().add(trackList, index, callback);
+        }
+    }
+
+    @ReactMethod
+    public void setQueue(ReadableArray tracks, final int startIndex, final double startPosition, final Promise callback) {
+        final ArrayList bundleList = Arguments.toList(tracks);
+
+        waitForConnection(() -> setQueue(bundleList, startIndex, startPosition, callback));
+    }
+
+    /**
+     * @param startPosition The position in seconds, or a negative number for the default position
+     */
+    private void setQueue(List bundleList, int startIndex, double startPosition, Promise callback) {
+        List<Track> trackList;
+
+        try {
+            trackList = Track.createTracks(getReactApplicationContext(), bundleList, binder.getRatingType());
+        } catch(Exception ex) {
+            callback.reject("invalid_track_object", ex);
+            return;
+        }
+
+        if(trackList == null || trackList.isEmpty()) {
+            callback.reject("invalid_track_object", "Track is missing a required key");
+            return;
+        }
+
+        long position = startPosition < 0 ? C.TIME_UNSET : Utils.toMillis(startPosition);
+        binder.getPlayback().setQueue(trackList, startIndex, position, callback);
     }
 
     @ReactMethod
     public void remove(ReadableArray tracks, final Promise callback) {
         final ArrayList trackList = Arguments.toList(tracks);
 
-        waitForConnection(() -> {
-            List<Track> queue = binder.getPlayback().getQueue();
-            List<Integer> indexes = new ArrayList<>();
+        waitForConnection(() -> removeTracks(trackList, callback));
+    }
 
-            for(Object o : trackList) {
-                String id = o.toString();
+    private void removeTracks(List trackList, Promise callback) {
+        TrackQueue queue = binder.getPlayback().getQueue();
+        List<Integer> indexes = new ArrayList<>();
 
-                for(int i = 0; i < queue.size(); i++) {
-                    if(queue.get(i).id.equals(id)) {
-                        indexes.add(i);
-                        break;
-                    }
-                }
-            }
+        for(Object o : trackList) {
+            int index = queue.indexOf(o.toString());
+            if(index != -1) indexes.add(index);
+        }
 
-            if (indexes.size() > 0) {
-                binder.getPlayback().remove(indexes, callback);
-            }
-        });
+        if (indexes.size() > 0) {
+            binder.getPlayback().remove(indexes, callback);
+        } else {
+            callback.resolve(null);
+        }
     }
 
     @ReactMethod
     public void removeUpcomingTracks(final Promise callback) {
-        waitForConnection(() -> {
-            binder.getPlayback().removeUpcomingTracks();
-            callback.resolve(null);
-        });
+        waitForConnection(() -> binder.getPlayback().removeUpcomingTracks(callback));
     }
 
     @ReactMethod
@@ -334,16 +362,8 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
     @ReactMethod
     public void getTrack(final String id, final Promise callback) {
         waitForConnection(() -> {
-            List<Track> tracks = binder.getPlayback().getQueue();
-
-            for(Track track : tracks) {
-                if(track.id.equals(id)) {
-                    callback.resolve(Arguments.fromBundle(track.originalItem));
-                    return;
-                }
-            }
-
-            callback.resolve(null);
+            Track track = binder.getPlayback().getQueue().getById(id);
+            callback.resolve(track == null ? null : Arguments.fromBundle(track.originalItem));
         });
     }
 
@@ -351,7 +371,7 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
     public void getQueue(Promise callback) {
         waitForConnection(() -> {
             List queue = new ArrayList();
-            List<Track> tracks = binder.getPlayback().getQueue();
+            List<Track> tracks = binder.getPlayback().getQueue().snapshot();
 
             for(Track track : tracks) {
                 queue.add(track.originalItem);
@@ -413,6 +433,309 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
         });
     }
 
+    @ReactMethod
+    public void executeBatch(ReadableArray commands, final Promise callback) {
+        final ArrayList commandList = Arguments.toList(commands);
+
+        waitForConnection(() -> {
+            // The events triggered by the commands are delivered together once the batch finishes
+            binder.getManager().beginEventBatch();
+            executeCommand(commandList, 0, callback);
+        });
+    }
+
+    /**
+     * Executes the command at the given index, continuing with the next one once it finishes.
+     * Stops at the first command that fails, rejecting the batch with its error.
+     *
+     * The batch isn't atomic: commands that finish asynchronously, such as queue changes,
+     * let other calls to the module run before the next command starts.
+     */
+    private void executeCommand(List commands, int index, Promise callback) {
+        if(index >= commands.size()) {
+            binder.getManager().endEventBatch();
+            callback.resolve(null);
+            return;
+        }
+
+        // Makes sure the batch continues or ends only once, even if a command fails after settling
+        boolean[] settled = new boolean[1];
+
+        Promise next = new PromiseImpl(args -> {
+            if(settled[0]) return;
+            settled[0] = true;
+
+            executeCommand(commands, index + 1, callback);
+        }, args -> {
+            if(settled[0]) return;
+            settled[0] = true;
+
+            ReadableMap error = args.length > 0 && args[0] instanceof ReadableMap ? (ReadableMap)args[0] : null;
+            String code = error != null && error.hasKey("code") ? error.getString("code") : "batch_failed";
+            String message = error != null && error.hasKey("message") ? error.getString("message") : null;
+
+            binder.getManager().endEventBatch();
+            callback.reject(code, "Command " + index + " failed: " + message);
+        });
+
+        Object o = commands.get(index);
+        Bundle command = o instanceof Bundle ? (Bundle)o : null;
+        String name = command != null ? command.getString("command") : null;
+
+        if(name == null) {
+            next.reject("invalid_command", "The command is missing its name");
+            return;
+        }
+
+        try {
+            dispatchCommand(command, name, next);
+        } catch(Exception ex) {
+            // Rejecting also releases the events held by the batch
+            Log.w(Utils.LOG, "Command " + name + " failed", ex);
+            next.reject("batch_failed", ex);
+        }
+    }
+
+    private void dispatchCommand(Bundle command, String name, Promise next) {
+        ExoPlayback playback = binder.getPlayback();
+
+        switch(name) {
+            case "add":
+                // Arrays are converted into serializable lists
+                Object tracks = command.getSerializable("tracks");
+                if(!(tracks instanceof List)) {
+                    next.reject("invalid_track_object", "The tracks are missing");
+                } else {
+                    addTracks((List)tracks, command.getString("insertBeforeId"), next);
+                }
+                break;
+            case "setQueue":
+                Object queue = command.getSerializable("tracks");
+                if(!(queue instanceof List)) {
+                    next.reject("invalid_track_object", "The tracks are missing");
+                } else {
+                    setQueue((List)queue, (int)command.getDouble("startIndex", 0), command.getDouble("startPosition", -1), next);
+                }
+                break;
+            case "remove":
+                Object ids = command.getSerializable("tracks");
+                removeTracks(ids instanceof List ? (List)ids : new ArrayList(), next);
+                break;
+            case "removeUpcomingTracks":
+                playback.removeUpcomingTracks(next);
+                break;
+            case "skip":
+                playback.skip(command.getString("id"), next);
+                break;
+            case "skipToNext":
+                playback.skipToNext(next);
+                break;
+            case "skipToPrevious":
+                playback.skipToPrevious(next);
+                break;
+            case "reset":
+                playback.reset();
+                next.resolve(null);
+                break;
+            case "play":
+                playback.play();
+                next.resolve(null);
+                break;
+            case "pause":
+                playback.pause();
+                next.resolve(null);
+                break;
+            case "stop":
+                playback.stop();
+                next.resolve(null);
+                break;
+            case "seekTo":
+                playback.seekTo(Utils.toMillis(command.getDouble("position", 0)));
+                next.resolve(null);
+                break;
+            case "setVolume":
+                playback.setVolume((float)command.getDouble("volume", 1));
+                next.resolve(null);
+                break;
+            case "setRate":
+                playback.setRate((float)command.getDouble("rate", 1));
+                next.resolve(null);
+                break;
+            default:
+                next.reject("invalid_command", "Unknown command: " + name);
+                break;
+        }
+    }
+
+    @ReactMethod
+    public void getPlaybackSnapshot(final Promise callback) {
+        waitForConnection(() -> callback.resolve(Arguments.fromBundle(binder.getPlayback().getSnapshot())));
+    }
+
+    @ReactMethod
+    public void getCacheStats(final Promise callback) {
+        // The cache is shared by the whole process, there's no need to wait for the service
+        callback.resolve(Arguments.fromBundle(SimpleCacheManager.INSTANCE.getStatsBundle()));
+    }
+
+    @ReactMethod
+    public void pinCache(ReadableArray tracks, final Promise callback) {
+        setPinned(tracks, true, callback);
+    }
+
+    @ReactMethod
+    public void unpinCache(ReadableArray tracks, final Promise callback) {
+        setPinned(tracks, false, callback);
+    }
+
+    private void setPinned(ReadableArray tracks, boolean pin, final Promise callback) {
+        final ArrayList trackList = Arguments.toList(tracks);
+
+        waitForConnection(() -> {
+            if(!pin) {
+                unpin(trackList);
+                callback.resolve(null);
+                return;
+            }
+
+            List<Track> queued = getQueuedTracks(trackList, callback);
+            if(queued == null) return;
+
+            LocalPlayback playback = (LocalPlayback)binder.getPlayback();
+            Map<String, String> keys = new HashMap<>();
+
+            for(Track track : queued) {
+                if(track.type != TrackType.DEFAULT || track.resourceId != 0 || Utils.isLocal(track.uri)) {
+                    callback.reject("unsupported_track", "Track " + track.id + " can't be pinned, only remote progressive tracks can");
+                    return;
+                }
+
+                keys.put(track.id, playback.getResolvedCacheKey(track));
+            }
+
+            SimpleCacheManager.INSTANCE.pin(getReactApplicationContext(), keys);
+            callback.resolve(null);
+        });
+    }
+
+    /**
+     * Unpins tracks by id or cache key. Tracks don't need to be in the queue, their keys are resolved from the pins
+     */
+    private void unpin(List ids) {
+        List<String> keys = new ArrayList<>();
+        ExoPlayback playback = binder.getPlayback();
+
+        for(Object o : ids) {
+            String id = o.toString();
+            keys.add(id);
+
+            // Also unpins the current key of a queued track, in case it was pinned under another id
+            Track track = playback instanceof LocalPlayback ? playback.getQueue().getById(id) : null;
+            if(track != null) keys.add(((LocalPlayback)playback).getResolvedCacheKey(track));
+        }
+
+        SimpleCacheManager.INSTANCE.unpin(getReactApplicationContext(), keys);
+    }
+
+    @ReactMethod
+    public void download(ReadableArray tracks, final Promise callback) {
+        final ArrayList trackList = Arguments.toList(tracks);
+
+        waitForConnection(() -> {
+            List<Track> queued = getQueuedTracks(trackList, callback);
+            if(queued == null) return;
+
+            for(Track track : queued) {
+                if(!TrackDownloader.isSupported(track)) {
+                    callback.reject("unsupported_track", "Track " + track.id + " can't be downloaded");
+                    return;
+                }
+            }
+
+            MusicManager manager = binder.getManager();
+
+            manager.prepareDownloader(callback, () -> {
+                LocalPlayback playback = (LocalPlayback)binder.getPlayback();
+
+                for(Track track : queued) {
+                    manager.getDownloader().download(track, playback.getResolvedCacheKey(track));
+                }
+
+                callback.resolve(null);
+            });
+        });
+    }
+
+    @ReactMethod
+    public void removeDownload(ReadableArray tracks, final Promise callback) {
+        final ArrayList trackList = Arguments.toList(tracks);
+
+        waitForConnection(() -> {
+            List<Track> queued = getQueuedTracks(trackList, callback);
+            if(queued == null) return;
+
+            MusicManager manager = binder.getManager();
+
+            manager.prepareDownloader(callback, () -> {
+                LocalPlayback playback = (LocalPlayback)binder.getPlayback();
+
+                for(Track track : queued) {
+                    if(TrackDownloader.isSupported(track)) {
+                        manager.getDownloader().remove(track, playback.getResolvedCacheKey(track));
+                    }
+                }
+
+                callback.resolve(null);
+            });
+        });
+    }
+
+    @ReactMethod
+    public void getDownloads(final Promise callback) {
+        waitForConnection(() -> {
+            MusicManager manager = binder.getManager();
+
+            manager.prepareDownloader(callback, () -> {
+                callback.resolve(Arguments.fromBundle(manager.getDownloader().getDownloads()));
+            });
+        });
+    }
+
+    @ReactMethod
+    public void setOfflineMode(final boolean auto, final boolean offline, final Promise callback) {
+        waitForConnection(() -> {
+            binder.getManager().setOfflineMode(auto, offline);
+            callback.resolve(null);
+        });
+    }
+
+    /**
+     * Finds the tracks with the given ids in the queue of a local playback, rejecting the promise when one is missing
+     */
+    private List<Track> getQueuedTracks(List ids, Promise callback) {
+        ExoPlayback playback = binder.getPlayback();
+
+        if(!(playback instanceof LocalPlayback)) {
+            callback.reject("unsupported", "The current playback doesn't support caching");
+            return null;
+        }
+
+        List<Track> tracks = new ArrayList<>();
+
+        for(Object o : ids) {
+            Track track = playback.getQueue().getById(o.toString());
+
+            if(track == null) {
+                callback.reject("track_not_in_queue", "Given track ID was not found in queue");
+                return null;
+            }
+
+            tracks.add(track);
+        }
+
+        return tracks;
+    }
+
     @ReactMethod
     public void getState(final Promise callback) {
         waitForConnection(() -> callback.resolve(binder.getPlayback().getState()));
@@ -0,0 +1,179 @@
+package com.guichaguri.trackplayer.service;
+
+import android.os.Bundle;
+import android.os.Handler;
+import com.guichaguri.trackplayer.module.MusicEvents;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Collects the playback events emitted within a window and delivers them as a single message.
+ *
+ * Events that only describe the latest state, such as {@link MusicEvents#PLAYBACK_STATE} and
+ * {@link MusicEvents#PLAYBACK_PROGRESS}, are coalesced, keeping only the most recent one.
+ * A state is only dropped when its state, rate and position match the last delivered one.
+ * The remaining events keep their order.
+ * Must only be used from the service thread.
+ */
+public class EventPipeline {
+
+    /**
+     * Receives the delivered events
+     */
+    public interface Emitter {
+        void emit(String event, Bundle data);
+    }
+
+    // How far apart in seconds two positions can be while still describing the same playback
+    private static final double POSITION_TOLERANCE = 0.1;
+
+    private final Emitter emitter;
+    private final Handler handler = new Handler();
+    private final Runnable flush = this::onWindowEnd;
+
+    private final List<String> events = new ArrayList<>();
+    private final List<Bundle> data = new ArrayList<>();
+
+    private long window = 0;
+    private boolean scheduled = false;
+    private int holds = 0;
+    private Bundle lastState = null;
+
+    public EventPipeline(Emitter emitter) {
+        this.emitter = emitter;
+    }
+
+    /**
+     * Sets how long events are collected before being delivered, or 0 to deliver them right away
+     */
+    public void setWindow(long windowMs) {
+        this.window = Math.max(windowMs, 0);
+        if(window == 0 && holds == 0) flush();
+    }
+
+    /**
+     * Holds every event until {@link #release()} is called, delivering them together
+     */
+    public void hold() {
+        holds++;
+    }
+
+    /**
+     * Delivers the held events once every {@link #hold()} has been released
+     */
+    public void release() {
+        if(holds > 0 && --holds == 0) flush();
+    }
+
+    public void emit(String event, Bundle bundle) {
+        if(window == 0 && holds == 0) {
+            if(MusicEvents.PLAYBACK_STATE.equals(event)) lastState = bundle;
+            emitter.emit(event, bundle);
+            return;
+        }
+
+        if(isCoalesced(event)) {
+            // Only the latest state matters, removes the one still waiting to be delivered
+            removePending(event);
+
+            if(MusicEvents.PLAYBACK_STATE.equals(event) && isSamePlayback(lastState, bundle)) {
+                return; // Nothing changed since the last delivered state
+            }
+        }
+
+        if(!scheduled && holds == 0) {
+            handler.postDelayed(flush, window);
+            scheduled = true;
+        }
+
+        events.add(event);
+        data.add(bundle);
+    }
+
+    private void onWindowEnd() {
+        scheduled = false;
+
+        // The held events are delivered when released
+        if(holds == 0) flush();
+    }
+
+    /**
+     * Delivers the pending events
+     */
+    public void flush() {
+        handler.removeCallbacks(flush);
+        scheduled = false;
+
+        if(events.isEmpty()) return;
+
+        for(int i = 0; i < events.size(); i++) {
+            if(MusicEvents.PLAYBACK_STATE.equals(events.get(i))) lastState = data.get(i);
+        }
+
+        if(events.size() == 1) {
+            emitter.emit(events.get(0), data.get(0));
+        } else {
+            ArrayList<Bundle> batch = new ArrayList<>();
+
+            for(int i = 0; i < events.size(); i++) {
+                Bundle bundle = new Bundle();
+                bundle.putString("type", events.get(i));
+                bundle.putBundle("data", data.get(i));
+                batch.add(bundle);
+            }
+
+            Bundle bundle = new Bundle();
+            bundle.putParcelableArrayList("events", batch);
+            emitter.emit(MusicEvents.PLAYBACK_BATCH, bundle);
+        }
+
+        events.clear();
+        data.clear();
+    }
+
+    /**
+     * Drops the pending events without delivering them
+     */
+    public void clear() {
+        handler.removeCallbacks(flush);
+        scheduled = false;
+        events.clear();
+        data.clear();
+    }
+
+    private boolean isCoalesced(String event) {
+        return MusicEvents.PLAYBACK_STATE.equals(event) || MusicEvents.PLAYBACK_PROGRESS.equals(event);
+    }
+
+    /**
+     * Whether the state describes the same playback as the delivered one, extrapolating its position to now
+     */
+    private boolean isSamePlayback(Bundle delivered, Bundle state) {
+        if(delivered == null) return false;
+        if(delivered.getInt("state") != state.getInt("state")) return false;
+        if(delivered.getDouble("rate") != state.getDouble("rate")) return false;
+        if(delivered.containsKey("position") != state.containsKey("position")) return false;
+        if(!state.containsKey("position")) return true;
+
+        double elapsed = (state.getDouble("timestamp") - delivered.getDouble("timestamp")) / 1000;
+        double expected = delivered.getDouble("position") + elapsed * delivered.getDouble("rate");
+
+        return Math.abs(state.getDouble("position") - expected) <= POSITION_TOLERANCE;
+    }
+
+    private void removePending(String event) {
+        Iterator<String> it = events.iterator();
+        Iterator<Bundle> dataIt = data.iterator();
+
+        while(it.hasNext()) {
+            dataIt.next();
+
+            if(it.next().equals(event)) {
+                it.remove();
+                dataIt.remove();
+            }
+        }
+    }
+
+}
@@ -3,6 +3,7 @@ package com.guichaguri.trackplayer.service;
 import android.os.Binder;
 import android.os.Bundle;
 import com.facebook.react.bridge.Promise;
+import com.guichaguri.trackplayer.module.MusicEvents;
 import com.guichaguri.trackplayer.service.player.ExoPlayback;
 
 /**
@@ -22,6 +23,14 @@ public class MusicBinder extends Binder {
         service.handler.post(r);
     }
 
+    public void attachEmitter(MusicEvents emitter) {
+        service.attachEmitter(emitter);
+    }
+
+    public void detachEmitter(MusicEvents emitter) {
+        service.detachEmitter(emitter);
+    }
+
     public MusicManager getManager() {
         return manager;
     }
@@ -9,12 +9,16 @@ import android.media.AudioAttributes;
 import android.media.AudioFocusRequest;
 import android.media.AudioManager;
 import android.media.AudioManager.OnAudioFocusChangeListener;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
 import android.net.wifi.WifiManager;
 import android.net.wifi.WifiManager.WifiLock;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
+import android.os.SystemClock;
 import android.support.annotation.RequiresApi;
 import android.util.Log;
 import com.google.android.exoplayer2.C;
@@ -24,11 +28,18 @@ import com.google.android.exoplayer2.ExoPlayerFactory;
 import com.google.android.exoplayer2.LoadControl;
 import com.google.android.exoplayer2.SimpleExoPlayer;
 import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.facebook.react.bridge.Promise;
 import com.guichaguri.trackplayer.module.MusicEvents;
 import com.guichaguri.trackplayer.service.metadata.MetadataManager;
+import com.guichaguri.trackplayer.service.metadata.SimpleCacheManager;
 import com.guichaguri.trackplayer.service.models.Track;
 import com.guichaguri.trackplayer.service.player.ExoPlayback;
 import com.guichaguri.trackplayer.service.player.LocalPlayback;
+import com.guichaguri.trackplayer.service.player.TrackDownloader;
+import com.guichaguri.trackplayer.util.DecryptedBlockCache;
+import com.guichaguri.trackplayer.util.FileDecryptionDataSource;
+import com.guichaguri.trackplayer.util.SharedHttpClient;
 
 import static com.google.android.exoplayer2.DefaultLoadControl.*;
 
@@ -57,12 +68,38 @@ public class MusicManager implements OnAudioFocusChangeListener {
     };
     private boolean receivingNoisyEvents = false;
 
+    private BroadcastReceiver connectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            updateConnectivity();
+        }
+    };
+    private boolean receivingConnectivityEvents = false;
+    private boolean autoOffline = false;
+
     private boolean stopWithApp = false;
 
+    private TrackDownloader downloader;
+    private int maxDownloads = 2;
+
+    private final EventPipeline events;
+
+    private final Handler progressHandler = new Handler();
+    private final Runnable progressUpdate = new Runnable() {
+        @Override
+        public void run() {
+            onProgress();
+            progressHandler.postDelayed(this, progressInterval);
+        }
+    };
+    private long progressInterval = 0;
+    private boolean updatingProgress = false;
+
     @SuppressLint("InvalidWakeLockTag")
     public MusicManager(MusicService service) {
         this.service = service;
         this.metadata = new MetadataManager(service, this);
+        this.events = new EventPipeline(service::emit);
 
         PowerManager powerManager = (PowerManager)service.getSystemService(Context.POWER_SERVICE);
         wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "track-player-wake-lock");
@@ -90,6 +127,51 @@ public class MusicManager implements OnAudioFocusChangeListener {
         return metadata;
     }
 
+    public TrackDownloader getDownloader() {
+        return downloader;
+    }
+
+    /**
+     * Creates the downloader once the cache is ready and then runs the callback in the service thread
+     */
+    public void prepareDownloader(Promise promise, Runnable callback) {
+        if(downloader != null) {
+            callback.run();
+            return;
+        }
+
+        if(!SimpleCacheManager.INSTANCE.isEnabled()) {
+            promise.reject("cache_disabled", "Downloads require the cache to be enabled with maxCacheSize");
+            return;
+        }
+
+        SimpleCacheManager.INSTANCE.whenReady(() -> {
+            Handler handler = service.handler;
+
+            if(handler == null) {
+                promise.reject("player_destroyed", "The player was destroyed before the cache finished loading");
+                return;
+            }
+
+            handler.post(() -> {
+                if(downloader == null) {
+                    Cache cache = SimpleCacheManager.INSTANCE.getDownloadCache();
+
+                    if(cache == null || !(playback instanceof LocalPlayback)) {
+                        promise.reject("cache_unavailable", "The cache couldn't be loaded");
+                        return;
+                    }
+
+                    // Each download uses the http source of its track user agent
+                    LocalPlayback local = (LocalPlayback)playback;
+                    downloader = new TrackDownloader(service, this, handler, cache, local::getHttpDataSourceFactory, maxDownloads);
+                }
+
+                callback.run();
+            });
+        });
+    }
+
     public void switchPlayback(ExoPlayback playback) {
         if(this.playback != null) {
             this.playback.stop();
@@ -101,6 +183,47 @@ public class MusicManager implements OnAudioFocusChangeListener {
         if(this.playback != null) {
             this.playback.initialize();
         }
+
+        updateConnectivityTracking();
+    }
+
+    /**
+     * Sets whether remote tracks should only be played from the cache
+     *
+     * @param auto Whether the mode should follow the connectivity state
+     * @param offline Whether it's offline, ignored when {@code auto} is set
+     */
+    public void setOfflineMode(boolean auto, boolean offline) {
+        autoOffline = auto;
+
+        if(!auto && playback instanceof LocalPlayback) {
+            ((LocalPlayback)playback).setOffline(offline);
+        }
+
+        updateConnectivityTracking();
+    }
+
+    private void updateConnectivityTracking() {
+        boolean track = autoOffline && playback instanceof LocalPlayback;
+
+        if(track && !receivingConnectivityEvents) {
+            receivingConnectivityEvents = true;
+            service.registerReceiver(connectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        } else if(!track && receivingConnectivityEvents) {
+            service.unregisterReceiver(connectivityReceiver);
+            receivingConnectivityEvents = false;
+        }
+
+        if(track) updateConnectivity();
+    }
+
+    private void updateConnectivity() {
+        if(!(playback instanceof LocalPlayback)) return;
+
+        ConnectivityManager connectivity = (ConnectivityManager)service.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo info = connectivity == null ? null : connectivity.getActiveNetworkInfo();
+
+        ((LocalPlayback)playback).setOffline(info == null || !info.isConnected());
     }
 
     public LocalPlayback createLocalPlayback(Bundle options) {
@@ -121,7 +244,49 @@ public class MusicManager implements OnAudioFocusChangeListener {
         player.setAudioAttributes(new com.google.android.exoplayer2.audio.AudioAttributes.Builder()
                 .setContentType(C.CONTENT_TYPE_MUSIC).setUsage(C.USAGE_MEDIA).build());
 
-        return new LocalPlayback(service, this, player, cacheMaxSize);
+        LocalPlayback playback = new LocalPlayback(service, this, player, cacheMaxSize);
+        playback.setLazyLoad(options.getBoolean("lazyLoad", false), (int)options.getDouble("lazyLoadWindow", 2));
+
+        maxDownloads = Math.max((int)options.getDouble("maxConcurrentDownloads", 2), 1);
+
+        events.setWindow(Utils.toMillis(options.getDouble("eventCoalescingWindow", 0)));
+
+        setProgressInterval(Utils.toMillis(options.getDouble("progressUpdateInterval", 0)));
+
+        playback.setCacheKeyIgnoredParams(options.getStringArrayList("cacheKeyIgnoredParams"));
+
+        int prefetchCount = (int)options.getDouble("prefetchCount", 0);
+        long prefetchSize = (long)(options.getDouble("prefetchSize", 512) * 1024);
+        long prefetchBandwidth = (long)(options.getDouble("prefetchBandwidth", 0) * 1024);
+        playback.setPrefetch(prefetchCount, prefetchSize, prefetchBandwidth);
+
+        String ioMode = options.getString("decryptionIoMode");
+        int blockSize = (int)(options.getDouble("decryptionBlockSize", 64) * 1024);
+        boolean parallelDecryption = options.getBoolean("parallelDecryption", false);
+
+        DecryptedBlockCache.INSTANCE.setMaxSize((int)(options.getDouble("decryptedCacheSize", 0) * 1024));
+
+        if("buffered".equals(ioMode)) {
+            playback.setDecryptionIo(FileDecryptionDataSource.IoMode.BUFFERED, blockSize, parallelDecryption);
+        } else if("mapped".equals(ioMode)) {
+            playback.setDecryptionIo(FileDecryptionDataSource.IoMode.MAPPED, blockSize, parallelDecryption);
+        } else {
+            playback.setDecryptionIo(FileDecryptionDataSource.IoMode.DIRECT, blockSize, parallelDecryption);
+        }
+
+        // Either a boolean or "auto" to follow the connectivity state
+        Object offlineMode = options.get("offlineMode");
+        autoOffline = "auto".equals(offlineMode);
+        playback.setOffline(Boolean.TRUE.equals(offlineMode));
+
+        if("okhttp".equals(options.getString("networkEngine"))) {
+            int poolSize = (int)options.getDouble("connectionPoolSize", 0);
+            long keepAlive = (long)options.getDouble("connectionKeepAlive", 300);
+
+            playback.setHttpClient(SharedHttpClient.get(poolSize, keepAlive));
+        }
+
+        return playback;
     }
 
     @SuppressLint("WakelockTimeout")
@@ -129,6 +294,8 @@ public class MusicManager implements OnAudioFocusChangeListener {
         Log.d(Utils.LOG, "onPlay");
         if(playback == null) return;
 
+        startProgressUpdates();
+
         Track track = playback.getCurrentTrack();
         if(track == null) return;
 
@@ -153,6 +320,8 @@ public class MusicManager implements OnAudioFocusChangeListener {
     public void onPause() {
         Log.d(Utils.LOG, "onPause");
 
+        stopProgressUpdates();
+
         // Unregisters the noisy receiver
         if(receivingNoisyEvents) {
             service.unregisterReceiver(noisyReceiver);
@@ -169,6 +338,8 @@ public class MusicManager implements OnAudioFocusChangeListener {
     public void onStop() {
         Log.d(Utils.LOG, "onStop");
 
+        stopProgressUpdates();
+
         // Release the wake and the wifi locks
         if(wakeLock.isHeld()) wakeLock.release();
         if(wifiLock.isHeld()) wifiLock.release();
@@ -178,12 +349,75 @@ public class MusicManager implements OnAudioFocusChangeListener {
         metadata.setActive(false);
     }
 
+    /**
+     * Sets how often the progress is emitted while playing, or 0 to disable it
+     */
+    public void setProgressInterval(long intervalMs) {
+        progressInterval = Math.max(intervalMs, 0);
+
+        // Restarts the updates with the new interval
+        stopProgressUpdates();
+        if(playback != null && Utils.isPlaying(playback.getState())) startProgressUpdates();
+    }
+
+    private void startProgressUpdates() {
+        if(updatingProgress || progressInterval <= 0) return;
+
+        updatingProgress = true;
+        progressHandler.post(progressUpdate);
+    }
+
+    private void stopProgressUpdates() {
+        if(!updatingProgress) return;
+
+        updatingProgress = false;
+        progressHandler.removeCallbacks(progressUpdate);
+    }
+
+    private void onProgress() {
+        if(playback == null) return;
+
+        Track track = playback.getCurrentTrack();
+        long duration = playback.getDuration();
+
+        Bundle bundle = new Bundle();
+        bundle.putString("track", track != null ? track.id : null);
+        putPosition(bundle, "position");
+        bundle.putDouble("bufferedPosition", Utils.toSeconds(playback.getBufferedPosition()));
+        bundle.putDouble("duration", duration == C.TIME_UNSET ? 0 : Utils.toSeconds(duration));
+        events.emit(MusicEvents.PLAYBACK_PROGRESS, bundle);
+    }
+
+    /**
+     * Adds the current position along with the time it was read and the playback speed,
+     * so the position can be extrapolated until the next event
+     */
+    private void putPosition(Bundle bundle, String key) {
+        bundle.putDouble("timestamp", SystemClock.elapsedRealtime());
+        if(playback == null) return;
+
+        bundle.putDouble(key, Utils.toSeconds(playback.getPosition()));
+        bundle.putDouble("rate", playback.getRate());
+    }
+
+    /**
+     * Holds the playback events until {@link #endEventBatch()} is called, delivering them together
+     */
+    public void beginEventBatch() {
+        events.hold();
+    }
+
+    public void endEventBatch() {
+        events.release();
+    }
+
     public void onStateChange(int state) {
         Log.d(Utils.LOG, "onStateChange");
 
         Bundle bundle = new Bundle();
         bundle.putInt("state", state);
-        service.emit(MusicEvents.PLAYBACK_STATE, bundle);
+        putPosition(bundle, "position");
+        events.emit(MusicEvents.PLAYBACK_STATE, bundle);
         metadata.updatePlayback(playback);
     }
 
@@ -196,7 +430,8 @@ public class MusicManager implements OnAudioFocusChangeListener {
         bundle.putString("track", previous != null ? previous.id : null);
         bundle.putDouble("position", Utils.toSeconds(prevPos));
         bundle.putString("nextTrack", next != null ? next.id : null);
-        service.emit(MusicEvents.PLAYBACK_TRACK_CHANGED, bundle);
+        putPosition(bundle, "nextPosition");
+        events.emit(MusicEvents.PLAYBACK_TRACK_CHANGED, bundle);
     }
 
     public void onReset() {
@@ -209,7 +444,17 @@ public class MusicManager implements OnAudioFocusChangeListener {
         Bundle bundle = new Bundle();
         bundle.putString("track", previous != null ? previous.id : null);
         bundle.putDouble("position", Utils.toSeconds(prevPos));
-        service.emit(MusicEvents.PLAYBACK_QUEUE_ENDED, bundle);
+        events.emit(MusicEvents.PLAYBACK_QUEUE_ENDED, bundle);
+    }
+
+    public void onDownloadUpdate(String id, String state, boolean removing, float percentage, long bytes) {
+        Bundle bundle = new Bundle();
+        bundle.putString("track", id);
+        bundle.putString("state", state);
+        bundle.putBoolean("removing", removing);
+        bundle.putDouble("percentage", percentage);
+        bundle.putDouble("downloadedBytes", bytes);
+        service.emit(MusicEvents.DOWNLOAD_STATE, bundle);
     }
 
     public void onError(String code, String error) {
@@ -219,7 +464,7 @@ public class MusicManager implements OnAudioFocusChangeListener {
         Bundle bundle = new Bundle();
         bundle.putString("code", code);
         bundle.putString("message", error);
-        service.emit(MusicEvents.PLAYBACK_ERROR, bundle);
+        events.emit(MusicEvents.PLAYBACK_ERROR, bundle);
     }
 
     @Override
@@ -309,9 +554,25 @@ public class MusicManager implements OnAudioFocusChangeListener {
             receivingNoisyEvents = false;
         }
 
+        // Stop following the connectivity state
+        if(receivingConnectivityEvents) {
+            service.unregisterReceiver(connectivityReceiver);
+            receivingConnectivityEvents = false;
+        }
+
         // Release the playback resources
         if(playback != null) playback.destroy();
 
+        // Stop emitting the progress and deliver the events that are still waiting
+        stopProgressUpdates();
+        events.flush();
+
+        // Pause the downloads, they will be resumed on the next start
+        if(downloader != null) {
+            downloader.release();
+            downloader = null;
+        }
+
         // Release the metadata resources
         metadata.destroy();
 
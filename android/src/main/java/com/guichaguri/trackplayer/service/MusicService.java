@@ -18,6 +18,8 @@ import com.facebook.react.ReactInstanceManager;
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactContext;
 import com.facebook.react.jstasks.HeadlessJsTaskConfig;
+import com.guichaguri.trackplayer.module.MusicEvents;
+import com.guichaguri.trackplayer.util.DecryptedBlockCache;
 import javax.annotation.Nullable;
 
 /**
@@ -28,6 +30,9 @@ public class MusicService extends HeadlessJsTaskService {
     MusicManager manager;
     Handler handler;
 
+    // The module events are sent to directly, skipping the broadcasts
+    private volatile MusicEvents emitter;
+
     @Nullable
     @Override
     protected HeadlessJsTaskConfig getTaskConfig(Intent intent) {
@@ -39,7 +44,29 @@ public class MusicService extends HeadlessJsTaskService {
         // Overridden to prevent the service from being terminated
     }
 
+    /**
+     * Sends the events straight to the given module instead of broadcasting them
+     */
+    public synchronized void attachEmitter(MusicEvents emitter) {
+        this.emitter = emitter;
+    }
+
+    /**
+     * Goes back to broadcasting the events, unless another module has been attached since
+     */
+    public synchronized void detachEmitter(MusicEvents emitter) {
+        if(this.emitter == emitter) this.emitter = null;
+    }
+
     public void emit(String event, Bundle data) {
+        MusicEvents emitter = this.emitter;
+
+        if(emitter != null && emitter.isActive()) {
+            emitter.emit(event, data);
+            return;
+        }
+
+        // Broadcasts the event when the module isn't attached
         Intent intent = new Intent(Utils.EVENT_INTENT);
 
         intent.putExtra("event", event);
@@ -125,6 +152,20 @@ public class MusicService extends HeadlessJsTaskService {
         destroy();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        DecryptedBlockCache.INSTANCE.trimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+
+        DecryptedBlockCache.INSTANCE.clear();
+    }
+
     @Override
     public void onTaskRemoved(Intent rootIntent) {
         super.onTaskRemoved(rootIntent);
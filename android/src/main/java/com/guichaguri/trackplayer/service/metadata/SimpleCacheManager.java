@@ -1,26 +1,231 @@
 package com.guichaguri.trackplayer.service.metadata;
 
-import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import com.google.android.exoplayer2.upstream.cache.NoOpCacheEvictor;
 import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.guichaguri.trackplayer.service.Utils;
+import com.guichaguri.trackplayer.util.CacheStats;
+import com.guichaguri.trackplayer.util.PriorityCacheEvictor;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
+ * Holds the only {@link SimpleCache} of the process, as it only allows one instance per folder.
+ *
+ * Downloads are kept in a separate cache that is never evicted, so their content (including every HLS and DASH
+ * segment) stays available regardless of how much is streamed.
+ *
+ * The cache index is loaded in a background thread. Until it's ready, {@link #getCache()} returns {@code null}
+ * and data sources should read straight from the network.
+ *
  * @author David Chavez (@dcvz)
  */
 public enum SimpleCacheManager {
     INSTANCE;
 
-    // getters and setters
+    private static final String PREFERENCES = "TrackPlayerCache";
+    private static final String PINNED_KEYS = "pinned";
+    private static final String PINNED_TRACKS_PREFERENCES = "TrackPlayerPinnedTracks";
 
-    private SimpleCache _cache;
+    private final CacheStats stats = new CacheStats();
+    private final List<Runnable> readyCallbacks = new ArrayList<>();
 
-    public SimpleCache getCache(File cacheDir, long cacheMaxSize) {
-        if (_cache != null) return _cache;
+    private volatile SimpleCache cache;
+    private volatile SimpleCache downloadCache;
+    private PriorityCacheEvictor evictor;
+    private boolean initializing = false;
+    private long maxSize = 0;
 
-        _cache = new SimpleCache(cacheDir, new LeastRecentlyUsedCacheEvictor(cacheMaxSize));
-        return _cache;
+    /**
+     * Starts loading the cache in a background thread. Does nothing if it's already loaded or loading
+     *
+     * @param cacheMaxSize The maximum size of the cache in bytes, only used when the cache is first created
+     */
+    public synchronized void initialize(Context context, long cacheMaxSize) {
+        if(cache != null || initializing) return;
+        initializing = true;
+        maxSize = cacheMaxSize;
+
+        File cacheDir = new File(context.getCacheDir(), "TrackPlayer");
+        File downloadDir = new File(context.getFilesDir(), "TrackPlayerDownloads");
+
+        PriorityCacheEvictor cacheEvictor = new PriorityCacheEvictor(cacheMaxSize, stats);
+        cacheEvictor.setPinned(getPinnedKeys(context), true);
+        evictor = cacheEvictor;
+
+        Thread thread = new Thread(() -> {
+            SimpleCache simpleCache = null;
+            SimpleCache downloads = null;
+
+            try {
+                simpleCache = new SimpleCache(cacheDir, cacheEvictor);
+                downloads = new SimpleCache(downloadDir, new NoOpCacheEvictor());
+
+                // Blocks until the indexes are fully loaded
+                simpleCache.getCacheSpace();
+                downloads.getCacheSpace();
+            } catch(Exception ex) {
+                Log.w(Utils.LOG, "Couldn't initialize the cache", ex);
+            }
+
+            List<Runnable> callbacks;
+
+            synchronized(SimpleCacheManager.this) {
+                cache = simpleCache;
+                downloadCache = downloads;
+                initializing = false;
+
+                callbacks = new ArrayList<>(readyCallbacks);
+                readyCallbacks.clear();
+            }
+
+            for(Runnable callback : callbacks) callback.run();
+        }, "TrackPlayer-CacheLoader");
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Whether the cache is either loaded or loading
+     */
+    public synchronized boolean isEnabled() {
+        return cache != null || initializing;
+    }
+
+    /**
+     * Runs the callback once the cache finishes loading, or right away if it's not loading.
+     * The callback might run in the cache loading thread
+     */
+    public void whenReady(Runnable callback) {
+        synchronized(this) {
+            if(initializing) {
+                readyCallbacks.add(callback);
+                return;
+            }
+        }
+
+        callback.run();
+    }
+
+    /**
+     * Gets the cache if it's ready to be used
+     */
+    @Nullable
+    public SimpleCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Gets the cache that holds the downloaded tracks if it's ready to be used
+     */
+    @Nullable
+    public SimpleCache getDownloadCache() {
+        return downloadCache;
+    }
+
+    /**
+     * Pins cache keys. Pinned keys are never evicted, even before the cache is initialized
+     *
+     * @param keys The cache keys mapped by the id of the track they belong to
+     */
+    public synchronized void pin(Context context, Map<String, String> keys) {
+        SharedPreferences.Editor tracks = context.getSharedPreferences(PINNED_TRACKS_PREFERENCES, Context.MODE_PRIVATE).edit();
+
+        for(Map.Entry<String, String> entry : keys.entrySet()) {
+            tracks.putString(entry.getKey(), entry.getValue());
+        }
+
+        tracks.apply();
+        setPinned(context, keys.values(), true);
     }
 
+    /**
+     * Unpins cache keys, so the track doesn't need to be in the queue anymore
+     *
+     * @param ids The ids of pinned tracks. Values that aren't the id of a pinned track are unpinned as cache keys
+     */
+    public synchronized void unpin(Context context, Collection<String> ids) {
+        SharedPreferences preferences = context.getSharedPreferences(PINNED_TRACKS_PREFERENCES, Context.MODE_PRIVATE);
+        Map<String, ?> tracks = preferences.getAll();
+        Set<String> keys = new HashSet<>();
+
+        for(String id : ids) {
+            Object key = tracks.get(id);
+            keys.add(key instanceof String ? (String)key : id);
+        }
+
+        // Forgets every track pinned under the removed keys
+        SharedPreferences.Editor editor = preferences.edit();
+
+        for(Map.Entry<String, ?> entry : tracks.entrySet()) {
+            if(keys.contains(entry.getValue())) editor.remove(entry.getKey());
+        }
+
+        editor.apply();
+        setPinned(context, keys, false);
+    }
+
+    private void setPinned(Context context, Collection<String> keys, boolean pin) {
+        Set<String> pinned = getPinnedKeys(context);
+
+        if(pin) {
+            pinned.addAll(keys);
+        } else {
+            pinned.removeAll(keys);
+        }
+
+        context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE).edit()
+                .putStringSet(PINNED_KEYS, pinned)
+                .apply();
+
+        if(evictor != null) evictor.setPinned(keys, pin);
+    }
+
+    /**
+     * Sets how much a cache key is worth keeping, where 1 is the default
+     */
+    public synchronized void setPriority(String key, float priority) {
+        if(evictor != null) evictor.setPriority(key, priority);
+    }
+
+    /**
+     * Counts a play of the content stored under the key, used to rank it for eviction
+     */
+    public synchronized void onAccess(String key) {
+        if(evictor != null) evictor.onAccess(key);
+    }
+
+    private Set<String> getPinnedKeys(Context context) {
+        Set<String> keys = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE)
+                .getStringSet(PINNED_KEYS, null);
+
+        // The returned set must not be modified
+        return keys == null ? new HashSet<>() : new HashSet<>(keys);
+    }
+
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Gets the counters of the cache, along with its current and maximum size in bytes
+     */
+    public Bundle getStatsBundle() {
+        SimpleCache simpleCache = cache;
+        long size = simpleCache == null ? 0 : simpleCache.getCacheSpace();
+
+        return stats.toBundle(size, maxSize);
+    }
 
-}
\ No newline at end of file
+}
@@ -8,7 +8,6 @@ import android.support.v4.media.MediaMetadataCompat;
 import android.support.v4.media.RatingCompat;
 import android.support.v4.media.session.MediaSessionCompat.QueueItem;
 
-import com.google.android.exoplayer2.extractor.DefaultExtractorsFactory;
 import com.google.android.exoplayer2.source.ExtractorMediaSource;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.dash.DashMediaSource;
@@ -18,15 +17,9 @@ import com.google.android.exoplayer2.source.smoothstreaming.DefaultSsChunkSource
 import com.google.android.exoplayer2.source.smoothstreaming.SsMediaSource;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
-import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
-import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
-import com.google.android.exoplayer2.upstream.DefaultHttpDataSourceFactory;
 import com.google.android.exoplayer2.upstream.RawResourceDataSource;
-import com.google.android.exoplayer2.util.Util;
 import com.guichaguri.trackplayer.service.Utils;
-import com.guichaguri.trackplayer.service.player.ExoPlayback;
 import com.guichaguri.trackplayer.service.player.LocalPlayback;
-import com.guichaguri.trackplayer.util.FileDecryptionDataSourceFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -61,6 +54,8 @@ public class Track {
 
     public String contentType;
     public String userAgent;
+    public String cacheKey;
+    public float cachePriority;
 
     public Uri artwork;
 
@@ -99,6 +94,8 @@ public class Track {
 
         contentType = bundle.getString("contentType");
         userAgent = bundle.getString("userAgent");
+        cacheKey = bundle.getString("cacheKey");
+        cachePriority = (float)bundle.getDouble("cachePriority", 1);
         artwork = Utils.getUri(context, bundle, "artwork");
 
         title = bundle.getString("title");
@@ -154,7 +151,7 @@ public class Track {
     public MediaSource toMediaSource(Context ctx, LocalPlayback playback) {
         // Updates the user agent if not set
         if(userAgent == null || userAgent.isEmpty())
-            userAgent = Util.getUserAgent(ctx, "react-native-track-player");
+            userAgent = playback.getDefaultUserAgent();
 
         DataSource.Factory ds;
 
@@ -179,37 +176,35 @@ public class Track {
             // Creates a local source factory
 //            ds = new DefaultDataSourceFactory(ctx, userAgent);
             return new ExtractorMediaSource(uri,
-                    new FileDecryptionDataSourceFactory(ctx.getApplicationContext(), null, decrypt),
-                    new DefaultExtractorsFactory(),
+                    playback.getDataSourceFactory(this),
+                    playback.getExtractorsFactory(true),
                     null, null);
 
         } else {
 
-            // Creates a default http source factory, enabling cross protocol redirects
-            ds = new DefaultHttpDataSourceFactory(
-                    userAgent, null,
-                    DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS,
-                    DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS,
-                    true
-            );
-
-            ds = playback.enableCaching(ds);
+            // Gets the shared http source factory for this configuration
+            ds = playback.getDataSourceFactory(this);
 
         }
 
         switch(type) {
             case DASH:
                 return new DashMediaSource.Factory(new DefaultDashChunkSource.Factory(ds), ds)
+                        .setLoadErrorHandlingPolicy(playback.getLoadErrorHandlingPolicy())
                         .createMediaSource(uri);
             case HLS:
                 return new HlsMediaSource.Factory(ds)
+                        .setLoadErrorHandlingPolicy(playback.getLoadErrorHandlingPolicy())
                         .createMediaSource(uri);
             case SMOOTH_STREAMING:
                 return new SsMediaSource.Factory(new DefaultSsChunkSource.Factory(ds), ds)
+                        .setLoadErrorHandlingPolicy(playback.getLoadErrorHandlingPolicy())
                         .createMediaSource(uri);
             default:
                 return new ExtractorMediaSource.Factory(ds)
-                        .setExtractorsFactory(new DefaultExtractorsFactory().setConstantBitrateSeekingEnabled(true))
+                        .setExtractorsFactory(playback.getExtractorsFactory(false))
+                        .setLoadErrorHandlingPolicy(playback.getLoadErrorHandlingPolicy())
+                        .setCustomCacheKey(playback.getCacheKey(this))
                         .createMediaSource(uri);
         }
     }
@@ -0,0 +1,178 @@
+package com.guichaguri.trackplayer.service.models;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A thread-safe list of tracks that keeps an index from track id to its position in the queue
+ *
+ * Appending and removing from the end keep the index up to date incrementally.
+ * Any other change only marks the index as stale from the first affected position,
+ * which is then rebuilt once on the next lookup, so a batch of changes costs a single pass.
+ */
+public class TrackQueue extends AbstractList<Track> {
+
+    private final List<Track> tracks = new ArrayList<>();
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    // The first position that might be out of date in the index
+    private int dirtyFrom = Integer.MAX_VALUE;
+
+    @Override
+    public synchronized Track get(int index) {
+        return tracks.get(index);
+    }
+
+    @Override
+    public synchronized int size() {
+        return tracks.size();
+    }
+
+    @Override
+    public synchronized Track set(int index, Track track) {
+        Track previous = tracks.set(index, track);
+        markDirty(index);
+        return previous;
+    }
+
+    @Override
+    public synchronized void add(int index, Track track) {
+        if(index == tracks.size() && dirtyFrom > index) {
+            tracks.add(track);
+            if(!positions.containsKey(track.id)) positions.put(track.id, index);
+        } else {
+            tracks.add(index, track);
+            markDirty(index);
+        }
+        modCount++;
+    }
+
+    @Override
+    public synchronized boolean addAll(int index, Collection<? extends Track> c) {
+        if(c.isEmpty()) return false;
+
+        boolean append = index == tracks.size() && dirtyFrom > index;
+        tracks.addAll(index, c);
+
+        if(append) {
+            for(int i = index; i < tracks.size(); i++) {
+                String id = tracks.get(i).id;
+                if(!positions.containsKey(id)) positions.put(id, i);
+            }
+        } else {
+            markDirty(index);
+        }
+
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public synchronized Track remove(int index) {
+        Track track = tracks.remove(index);
+
+        if(index == tracks.size() && dirtyFrom > index) {
+            // Removed from the end, only the removed entry can be affected
+            Integer pos = positions.get(track.id);
+            if(pos != null && pos == index) positions.remove(track.id);
+        } else {
+            markDirty(index);
+        }
+
+        modCount++;
+        return track;
+    }
+
+    /**
+     * Removes the tracks between {@code fromIndex} (inclusive) and {@code toIndex} (exclusive)
+     */
+    @Override
+    public synchronized void removeRange(int fromIndex, int toIndex) {
+        if(fromIndex >= toIndex) return;
+
+        tracks.subList(fromIndex, toIndex).clear();
+        markDirty(fromIndex);
+        modCount++;
+    }
+
+    @Override
+    public synchronized void clear() {
+        tracks.clear();
+        positions.clear();
+        dirtyFrom = Integer.MAX_VALUE;
+        modCount++;
+    }
+
+    /**
+     * Moves a track to another position, shifting the ones in between
+     */
+    public synchronized void move(int from, int to) {
+        if(from == to) return;
+
+        tracks.add(to, tracks.remove(from));
+        markDirty(Math.min(from, to));
+        modCount++;
+    }
+
+    /**
+     * Gets the position of the first track with the given id
+     *
+     * @return The position or -1 when the id is not in the queue
+     */
+    public synchronized int indexOf(String id) {
+        if(id == null) return -1;
+
+        rebuildIndex();
+
+        Integer pos = positions.get(id);
+        return pos == null ? -1 : pos;
+    }
+
+    /**
+     * Gets the first track with the given id
+     *
+     * @return The track or {@code null} when the id is not in the queue
+     */
+    public synchronized Track getById(String id) {
+        int index = indexOf(id);
+        return index == -1 ? null : tracks.get(index);
+    }
+
+    /**
+     * Creates a copy of the tracks, safe to iterate outside of the queue lock
+     */
+    public synchronized List<Track> snapshot() {
+        return new ArrayList<>(tracks);
+    }
+
+    private void markDirty(int index) {
+        if(index < dirtyFrom) dirtyFrom = index;
+    }
+
+    private void rebuildIndex() {
+        if(dirtyFrom == Integer.MAX_VALUE) return;
+
+        if(dirtyFrom == 0) {
+            positions.clear();
+        } else {
+            Iterator<Integer> it = positions.values().iterator();
+
+            while(it.hasNext()) {
+                if(it.next() >= dirtyFrom) it.remove();
+            }
+        }
+
+        for(int i = dirtyFrom; i < tracks.size(); i++) {
+            String id = tracks.get(i).id;
+            if(!positions.containsKey(id)) positions.put(id, i);
+        }
+
+        dirtyFrom = Integer.MAX_VALUE;
+    }
+
+}
@@ -1,6 +1,8 @@
 package com.guichaguri.trackplayer.service.player;
 
 import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v4.media.session.PlaybackStateCompat;
 import android.util.Log;
 import com.facebook.react.bridge.Promise;
@@ -16,9 +18,8 @@ import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
 import com.guichaguri.trackplayer.service.MusicManager;
 import com.guichaguri.trackplayer.service.Utils;
 import com.guichaguri.trackplayer.service.models.Track;
-import java.util.ArrayList;
+import com.guichaguri.trackplayer.service.models.TrackQueue;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -30,7 +31,7 @@ public abstract class ExoPlayback<T extends Player> implements EventListener {
     protected final MusicManager manager;
     protected final T player;
 
-    protected List<Track> queue = Collections.synchronizedList(new ArrayList<>());
+    protected final TrackQueue queue = new TrackQueue();
 
     // https://github.com/google/ExoPlayer/issues/2728
     protected int lastKnownWindow = C.INDEX_UNSET;
@@ -47,7 +48,7 @@ public abstract class ExoPlayback<T extends Player> implements EventListener {
         player.addListener(this);
     }
 
-    public List<Track> getQueue() {
+    public TrackQueue getQueue() {
         return queue;
     }
 
@@ -57,7 +58,15 @@ public abstract class ExoPlayback<T extends Player> implements EventListener {
 
     public abstract void remove(List<Integer> indexes, Promise promise);
 
-    public abstract void removeUpcomingTracks();
+    public abstract void removeUpcomingTracks(Promise promise);
+
+    /**
+     * Replaces the whole queue at once, keeping the player state
+     *
+     * @param startIndex The index of the track to start from
+     * @param startPosition The position to start from, or {@link C#TIME_UNSET} for the default position
+     */
+    public abstract void setQueue(List<Track> tracks, int startIndex, long startPosition, Promise promise);
 
     public Track getCurrentTrack() {
         int index = player.getCurrentWindowIndex();
@@ -70,18 +79,18 @@ public abstract class ExoPlayback<T extends Player> implements EventListener {
             return;
         }
 
-        for(int i = 0; i < queue.size(); i++) {
-            if(id.equals(queue.get(i).id)) {
-                lastKnownWindow = player.getCurrentWindowIndex();
-                lastKnownPosition = player.getCurrentPosition();
+        int index = queue.indexOf(id);
 
-                seekToDefaultPosition(i);
-                promise.resolve(null);
-                return;
-            }
+        if(index == -1) {
+            promise.reject("track_not_in_queue", "Given track ID was not found in queue");
+            return;
         }
 
-        promise.reject("track_not_in_queue", "Given track ID was not found in queue");
+        lastKnownWindow = player.getCurrentWindowIndex();
+        lastKnownPosition = player.getCurrentPosition();
+
+        seekToDefaultPosition(index);
+        promise.resolve(null);
     }
 
     public void skipToPrevious(Promise promise) {
@@ -188,6 +197,27 @@ public abstract class ExoPlayback<T extends Player> implements EventListener {
         return PlaybackStateCompat.STATE_NONE;
     }
 
+    /**
+     * Reads the state, progress and current track at once, so they're consistent with each other
+     */
+    public Bundle getSnapshot() {
+        Track track = getCurrentTrack();
+        long position = getPosition();
+        long bufferedPosition = getBufferedPosition();
+        long duration = getDuration();
+
+        Bundle bundle = new Bundle();
+        bundle.putDouble("timestamp", SystemClock.elapsedRealtime());
+        bundle.putInt("state", getState());
+        bundle.putString("track", track != null ? track.id : null);
+        bundle.putDouble("position", Utils.toSeconds(position == C.POSITION_UNSET ? 0 : position));
+        bundle.putDouble("bufferedPosition", Utils.toSeconds(bufferedPosition == C.POSITION_UNSET ? 0 : bufferedPosition));
+        bundle.putDouble("duration", Utils.toSeconds(duration == C.TIME_UNSET ? 0 : duration));
+        bundle.putDouble("rate", getRate());
+        bundle.putDouble("volume", getVolume());
+        return bundle;
+    }
+
     public void destroy() {
         player.release();
     }
@@ -292,7 +322,7 @@ public abstract class ExoPlayback<T extends Player> implements EventListener {
         manager.onStateChange(12);
     }
 
-    private void seekToDefaultPosition(int windowIndex) {
+    protected void seekToDefaultPosition(int windowIndex) {
         //https://fabric.io/yunti/android/apps/com.yunti.zzm/issues/5c3d432af8b88c29634c6b2f?time=last-seven-days
         //先避免上面崩溃，还不知道什么情况下会进入到return
         Timeline timeline = player.getCurrentTimeline();
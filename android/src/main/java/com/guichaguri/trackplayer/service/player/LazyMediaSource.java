@@ -0,0 +1,71 @@
+package com.guichaguri.trackplayer.service.player;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import com.google.android.exoplayer2.ExoPlayer;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.source.CompositeMediaSource;
+import com.google.android.exoplayer2.source.MediaPeriod;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.guichaguri.trackplayer.service.models.Track;
+
+/**
+ * A placeholder {@link MediaSource} that only creates the real source of a track when it's needed
+ *
+ * The real source is created when this source is prepared or when the track enters the loading window
+ * of the playback, whichever comes first.
+ */
+public class LazyMediaSource extends CompositeMediaSource<Void> {
+
+    private final Context context;
+    private final LocalPlayback playback;
+    private final Track track;
+
+    private MediaSource source;
+
+    public LazyMediaSource(Context context, LocalPlayback playback, Track track) {
+        this.context = context;
+        this.playback = playback;
+        this.track = track;
+    }
+
+    public Track getTrack() {
+        return track;
+    }
+
+    public synchronized boolean isLoaded() {
+        return source != null;
+    }
+
+    /**
+     * Gets the real media source, creating it if needed
+     */
+    public synchronized MediaSource load() {
+        if(source == null) source = track.toMediaSource(context, playback);
+        return source;
+    }
+
+    @Override
+    public void prepareSourceInternal(ExoPlayer player, boolean isTopLevelSource, @Nullable TransferListener mediaTransferListener) {
+        super.prepareSourceInternal(player, isTopLevelSource, mediaTransferListener);
+        prepareChildSource(null, load());
+    }
+
+    @Override
+    protected void onChildSourceInfoRefreshed(Void id, MediaSource mediaSource, Timeline timeline, @Nullable Object manifest) {
+        refreshSourceInfo(timeline, manifest);
+    }
+
+    @Override
+    public MediaPeriod createPeriod(MediaPeriodId id, Allocator allocator) {
+        return load().createPeriod(id, allocator);
+    }
+
+    @Override
+    public void releasePeriod(MediaPeriod mediaPeriod) {
+        load().releasePeriod(mediaPeriod);
+    }
+
+}
@@ -7,21 +7,41 @@ import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.ExoPlaybackException;
 import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.ext.okhttp.OkHttpDataSourceFactory;
+import com.google.android.exoplayer2.extractor.DefaultExtractorsFactory;
+import com.google.android.exoplayer2.extractor.ExtractorsFactory;
 import com.google.android.exoplayer2.source.ConcatenatingMediaSource;
 import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.source.ShuffleOrder.DefaultShuffleOrder;
 import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSourceFactory;
+import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
+import com.google.android.exoplayer2.upstream.cache.Cache;
 import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
-import com.google.android.exoplayer2.upstream.cache.CacheDataSourceFactory;
-import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
-import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.google.android.exoplayer2.upstream.cache.ContentMetadata;
+import com.google.android.exoplayer2.util.Util;
 import com.guichaguri.trackplayer.service.MusicManager;
 import com.guichaguri.trackplayer.service.Utils;
+import com.guichaguri.trackplayer.service.metadata.SimpleCacheManager;
 import com.guichaguri.trackplayer.service.models.Track;
-import java.io.File;
+import com.guichaguri.trackplayer.service.models.TrackType;
+import com.guichaguri.trackplayer.util.CacheKeyNormalizer;
+import com.guichaguri.trackplayer.util.FileDecryptionDataSource;
+import com.guichaguri.trackplayer.util.FileDecryptionDataSourceFactory;
+import com.guichaguri.trackplayer.util.OfflineDataSource;
+import com.guichaguri.trackplayer.util.OfflineLoadErrorHandlingPolicy;
+import com.guichaguri.trackplayer.util.SharedCacheDataSourceFactory;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import okhttp3.OkHttpClient;
 
 /**
  * @author Guichaguri
@@ -30,22 +50,219 @@ public class LocalPlayback extends ExoPlayback<SimpleExoPlayer> {
 
     private final long cacheMaxSize;
 
-    private SimpleCache cache;
     private ConcatenatingMediaSource source;
     private boolean prepared = false;
 
+    // The last track counted as played in the cache
+    private Track accessedTrack;
+
+    // Whether setQueue is swapping the contents of the source
+    private boolean replacingQueue = false;
+
+    private boolean lazyLoad = false;
+    private int lazyLoadWindow = 0;
+
+    // Factories shared between tracks with the same configuration
+    private final Map<String, DataSource.Factory> dataSourceFactories = new HashMap<>();
+    private final ExtractorsFactory localExtractorsFactory = new DefaultExtractorsFactory();
+    private final ExtractorsFactory remoteExtractorsFactory = new DefaultExtractorsFactory().setConstantBitrateSeekingEnabled(true);
+    private String defaultUserAgent;
+    private OkHttpClient httpClient;
+
+    private CacheKeyNormalizer cacheKeyNormalizer;
+
+    private FileDecryptionDataSource.IoMode decryptionIoMode = FileDecryptionDataSource.IoMode.DIRECT;
+    private int decryptionBlockSize = FileDecryptionDataSource.DEFAULT_BLOCK_SIZE;
+    private boolean parallelDecryption = false;
+
+    private TrackPrefetcher prefetcher;
+    private int prefetchCount = 0;
+    private long prefetchSize = 0;
+    private long prefetchBandwidth = 0;
+
+    // Read by the loader threads whenever a remote source is opened
+    private final AtomicBoolean offline = new AtomicBoolean(false);
+    private final LoadErrorHandlingPolicy loadErrorHandlingPolicy = new OfflineLoadErrorHandlingPolicy();
+
     public LocalPlayback(Context context, MusicManager manager, SimpleExoPlayer player, long maxCacheSize) {
         super(context, manager, player);
         this.cacheMaxSize = maxCacheSize;
     }
 
+    /**
+     * Defers the creation of each track source until it's within {@code window} tracks of the current one.
+     * Must be called before {@link #initialize()}
+     */
+    public void setLazyLoad(boolean lazyLoad, int window) {
+        this.lazyLoad = lazyLoad;
+        this.lazyLoadWindow = Math.max(window, 0);
+    }
+
+    /**
+     * Ignores the given query parameters when caching remote sources.
+     * Must be called before any track is added
+     */
+    public void setCacheKeyIgnoredParams(List<String> params) {
+        cacheKeyNormalizer = params == null || params.isEmpty() ? null : new CacheKeyNormalizer(params);
+    }
+
+    /**
+     * Sets how local encrypted files are read.
+     * Must be called before any track is added
+     *
+     * @param mode How the files are read
+     * @param blockSize The amount of bytes read and decrypted at once in the block modes
+     * @param parallel Whether large reads are split between multiple threads when the cipher context allows it
+     */
+    public void setDecryptionIo(FileDecryptionDataSource.IoMode mode, int blockSize, boolean parallel) {
+        this.decryptionIoMode = mode;
+        this.decryptionBlockSize = blockSize;
+        this.parallelDecryption = parallel;
+    }
+
+    /**
+     * Gets the key the track content is stored under in the cache
+     */
+    public String getResolvedCacheKey(Track track) {
+        String key = getCacheKey(track);
+        return key != null ? key : track.uri.toString();
+    }
+
+    private void updateCachePriorities(Collection<Track> tracks) {
+        if(cacheMaxSize <= 0) return;
+
+        for(Track track : tracks) {
+            if(track.cachePriority != 1 && !Utils.isLocal(track.uri)) {
+                SimpleCacheManager.INSTANCE.setPriority(getResolvedCacheKey(track), track.cachePriority);
+            }
+        }
+    }
+
+    /**
+     * Resets the cache priorities of tracks that left the queue, as priorities only apply while a track is queued
+     */
+    private void releaseCachePriorities(Collection<Track> removed) {
+        if(cacheMaxSize <= 0) return;
+
+        Set<String> keys = new HashSet<>();
+
+        for(Track track : removed) {
+            if(track.cachePriority != 1 && !Utils.isLocal(track.uri)) keys.add(getResolvedCacheKey(track));
+        }
+
+        if(keys.isEmpty()) return;
+
+        // Keeps the keys still used by a track in the queue
+        for(Track track : queue.snapshot()) {
+            keys.remove(getResolvedCacheKey(track));
+        }
+
+        for(String key : keys) {
+            SimpleCacheManager.INSTANCE.setPriority(key, 1);
+        }
+    }
+
+    /**
+     * Counts a play of the current track in the cache, once it starts playing
+     */
+    private void recordCacheAccess() {
+        if(cacheMaxSize <= 0 || !player.getPlayWhenReady() || player.getPlaybackState() != Player.STATE_READY) return;
+
+        Track track = getCurrentTrack();
+        if(track == null || track == accessedTrack) return;
+
+        accessedTrack = track;
+
+        // Adaptive streams are cached by segment, so they have no single key to count
+        if(track.type == TrackType.DEFAULT && track.resourceId == 0 && !Utils.isLocal(track.uri)) {
+            SimpleCacheManager.INSTANCE.onAccess(getResolvedCacheKey(track));
+        }
+    }
+
+    /**
+     * Gets the key used to cache the track, or {@code null} when it's keyed by its uri
+     */
+    public String getCacheKey(Track track) {
+        if(track.cacheKey != null) return track.cacheKey;
+        if(cacheKeyNormalizer != null) return cacheKeyNormalizer.getKey(track.uri);
+        return null;
+    }
+
+    /**
+     * Downloads the beginning of the next {@code count} tracks into the cache while the current one plays.
+     * Must be called before {@link #initialize()}
+     *
+     * @param count The amount of upcoming tracks to prefetch, or 0 to disable it
+     * @param size The amount of bytes to prefetch per track
+     * @param bandwidth The maximum prefetching speed in bytes per second, or 0 for no limit
+     */
+    public void setPrefetch(int count, long size, long bandwidth) {
+        this.prefetchCount = Math.max(count, 0);
+        this.prefetchSize = size;
+        this.prefetchBandwidth = bandwidth;
+    }
+
+    /**
+     * Sets whether remote tracks should only be played from the cache.
+     * While offline, anything that isn't cached fails immediately instead of waiting for the network
+     */
+    public void setOffline(boolean offline) {
+        if(this.offline.getAndSet(offline) == offline) return;
+
+        Log.d(Utils.LOG, offline ? "Switched to offline mode" : "Switched to online mode");
+
+        if(prefetcher != null) {
+            if(offline) {
+                // Cancels the current prefetching
+                prefetcher.prefetch(Collections.<Track>emptyList());
+            } else {
+                prefetchUpcoming();
+            }
+        }
+    }
+
+    public boolean isOffline() {
+        return offline.get();
+    }
+
+    public LoadErrorHandlingPolicy getLoadErrorHandlingPolicy() {
+        return loadErrorHandlingPolicy;
+    }
+
+    /**
+     * Checks whether the track might be played while offline.
+     * Adaptive streams can't be checked beforehand and are always considered available
+     */
+    public boolean isAvailableOffline(Track track) {
+        if(track.resourceId != 0 || Utils.isLocal(track.uri)) return true;
+        if(track.type != TrackType.DEFAULT) return true;
+
+        String key = getResolvedCacheKey(track);
+
+        return isFullyCached(SimpleCacheManager.INSTANCE.getDownloadCache(), key)
+                || isFullyCached(SimpleCacheManager.INSTANCE.getCache(), key);
+    }
+
+    /**
+     * Checks whether the whole content is in the cache, as a partially cached track would fail mid-playback
+     */
+    private boolean isFullyCached(Cache cache, String key) {
+        if(cache == null) return false;
+
+        // The content length stored by the cache, read through the public metadata
+        long length = cache.getContentMetadata(key).get(ContentMetadata.INTERNAL_METADATA_NAME_PREFIX + "len", C.LENGTH_UNSET);
+        return length != C.LENGTH_UNSET && cache.getCachedLength(key, 0, length) >= length;
+    }
+
     @Override
     public void initialize() {
         if(cacheMaxSize > 0) {
-            File cacheDir = new File(context.getCacheDir(), "TrackPlayer");
-            cache = new SimpleCache(cacheDir, new LeastRecentlyUsedCacheEvictor(cacheMaxSize));
-        } else {
-            cache = null;
+            // Loads the shared cache in the background, sources will skip it until it's ready
+            SimpleCacheManager.INSTANCE.initialize(context, cacheMaxSize);
+
+            if(prefetchCount > 0 && prefetchSize > 0) {
+                prefetcher = new TrackPrefetcher(this, prefetchSize, prefetchBandwidth);
+            }
         }
 
         super.initialize();
@@ -54,9 +271,75 @@ public class LocalPlayback extends ExoPlayback<SimpleExoPlayer> {
     }
 
     public DataSource.Factory enableCaching(DataSource.Factory ds) {
-        if(cache == null || cacheMaxSize <= 0) return ds;
+        if(cacheMaxSize <= 0) return ds;
+
+        return new SharedCacheDataSourceFactory(ds, CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR, cacheMaxSize, cacheKeyNormalizer);
+    }
 
-        return new CacheDataSourceFactory(cache, ds, CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR, cacheMaxSize);
+    /**
+     * Sets the client used to load every remote source, or {@code null} to use the default http stack.
+     * Must be called before any track is added
+     */
+    public void setHttpClient(OkHttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    public String getDefaultUserAgent() {
+        if(defaultUserAgent == null) defaultUserAgent = Util.getUserAgent(context, "react-native-track-player");
+        return defaultUserAgent;
+    }
+
+    public ExtractorsFactory getExtractorsFactory(boolean local) {
+        return local ? localExtractorsFactory : remoteExtractorsFactory;
+    }
+
+    /**
+     * Gets the data source factory for the track, reusing the one created for tracks with the same configuration
+     */
+    public synchronized DataSource.Factory getDataSourceFactory(Track track) {
+        boolean local = Utils.isLocal(track.uri);
+        String key = track.type.name + '|' + (local ? "local|" + track.decrypt : "remote|" + track.userAgent);
+
+        DataSource.Factory ds = dataSourceFactories.get(key);
+        if(ds != null) return ds;
+
+        if(local) {
+            ds = new FileDecryptionDataSourceFactory(context.getApplicationContext(), null, track.decrypt,
+                    decryptionIoMode, decryptionBlockSize, parallelDecryption);
+        } else {
+            ds = enableCaching(OfflineDataSource.wrap(getHttpDataSourceFactory(track.userAgent), offline));
+        }
+
+        dataSourceFactories.put(key, ds);
+        return ds;
+    }
+
+    /**
+     * Gets the uncached http source factory for the given user agent
+     */
+    public synchronized DataSource.Factory getHttpDataSourceFactory(String userAgent) {
+        if(userAgent == null || userAgent.isEmpty()) userAgent = getDefaultUserAgent();
+
+        String key = "http|" + userAgent;
+
+        DataSource.Factory ds = dataSourceFactories.get(key);
+        if(ds != null) return ds;
+
+        if(httpClient != null) {
+            // Uses the shared client, reusing its pooled connections
+            ds = new OkHttpDataSourceFactory(httpClient, userAgent);
+        } else {
+            // Creates a default http source factory, enabling cross protocol redirects
+            ds = new DefaultHttpDataSourceFactory(
+                    userAgent, null,
+                    DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                    DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS,
+                    true
+            );
+        }
+
+        dataSourceFactories.put(key, ds);
+        return ds;
     }
 
     private void prepare() {
@@ -67,11 +350,52 @@ public class LocalPlayback extends ExoPlayback<SimpleExoPlayer> {
         }
     }
 
+    private MediaSource createMediaSource(Track track) {
+        if(lazyLoad) return new LazyMediaSource(context, this, track);
+        return track.toMediaSource(context, this);
+    }
+
+    /**
+     * Starts prefetching the tracks right after the current one
+     */
+    private void prefetchUpcoming() {
+        if(prefetcher == null || offline.get()) return;
+
+        int current = Math.max(player.getCurrentWindowIndex(), 0);
+        List<Track> upcoming = new ArrayList<>();
+
+        synchronized(queue) {
+            for(int i = current + 1; i < queue.size() && upcoming.size() < prefetchCount; i++) {
+                upcoming.add(queue.get(i));
+            }
+        }
+
+        prefetcher.prefetch(upcoming);
+    }
+
+    /**
+     * Creates the real sources of the tracks around the current one
+     */
+    private void loadWindow() {
+        if(!lazyLoad) return;
+
+        int current = Math.max(player.getCurrentWindowIndex(), 0);
+        int size = source.getSize();
+
+        for(int i = Math.max(current - lazyLoadWindow, 0); i <= current + lazyLoadWindow && i < size; i++) {
+            MediaSource ms = source.getMediaSource(i);
+            if(ms instanceof LazyMediaSource) ((LazyMediaSource)ms).load();
+        }
+    }
+
     @Override
     public void add(Track track, int index, Promise promise) {
         queue.add(index, track);
-        source.addMediaSource(index, track.toMediaSource(context, this), Utils.toRunnable(promise));
+        source.addMediaSource(index, createMediaSource(track), Utils.toRunnable(promise));
+        updateCachePriorities(Collections.singletonList(track));
 
+        loadWindow();
+        prefetchUpcoming();
         prepare();
     }
 
@@ -80,57 +404,200 @@ public class LocalPlayback extends ExoPlayback<SimpleExoPlayer> {
         List<MediaSource> trackList = new ArrayList<>();
 
         for(Track track : tracks) {
-            trackList.add(track.toMediaSource(context, this));
+            trackList.add(createMediaSource(track));
         }
 
         queue.addAll(index, tracks);
         source.addMediaSources(index, trackList, Utils.toRunnable(promise));
+        updateCachePriorities(tracks);
 
+        loadWindow();
+        prefetchUpcoming();
         prepare();
     }
 
     @Override
     public void remove(List<Integer> indexes, Promise promise) {
         int currentIndex = player.getCurrentWindowIndex();
+        int size = queue.size();
 
-        // Sort the list so we can loop through sequentially
+        // Sort the list so we can group the indexes into contiguous ranges
         Collections.sort(indexes);
 
-        for(int i = indexes.size() - 1; i >= 0; i--) {
-            int index = indexes.get(i);
+        List<int[]> ranges = new ArrayList<>();
+        int[] range = null;
 
+        for(int index : indexes) {
             // Skip indexes that are the current track or are out of bounds
-            if(index == currentIndex || index < 0 || index >= queue.size()) {
-                // Resolve the promise when the last index is invalid
-                if(i == 0) promise.resolve(null);
-                continue;
+            if(index == currentIndex || index < 0 || index >= size) continue;
+
+            if(range != null && index == range[1]) {
+                range[1]++;
+            } else if(range == null || index > range[1]) {
+                range = new int[]{index, index + 1};
+                ranges.add(range);
             }
+        }
 
-            queue.remove(index);
+        if(ranges.isEmpty()) {
+            promise.resolve(null);
+            return;
+        }
 
-            if(i == 0) {
-                source.removeMediaSource(index, Utils.toRunnable(promise));
-            } else {
-                source.removeMediaSource(index, null);
-            }
+        List<Track> removed = new ArrayList<>();
+
+        // Removes from the end so the remaining ranges still point to the right indexes
+        for(int i = ranges.size() - 1; i >= 0; i--) {
+            range = ranges.get(i);
+
+            removed.addAll(queue.subList(range[0], range[1]));
+            queue.removeRange(range[0], range[1]);
+
+            // Resolve the promise after the last range is removed
+            source.removeMediaSourceRange(range[0], range[1], i == 0 ? Utils.toRunnable(promise) : null);
         }
+
+        releaseCachePriorities(removed);
     }
 
     @Override
-    public void removeUpcomingTracks() {
+    public void removeUpcomingTracks(Promise promise) {
         int currentIndex = player.getCurrentWindowIndex();
-        if (currentIndex == C.INDEX_UNSET) return;
+        int size = queue.size();
+
+        if(currentIndex == C.INDEX_UNSET || currentIndex + 1 >= size) {
+            promise.resolve(null);
+            return;
+        }
+
+        List<Track> removed = new ArrayList<>(queue.subList(currentIndex + 1, size));
+
+        queue.removeRange(currentIndex + 1, size);
+        source.removeMediaSourceRange(currentIndex + 1, size, Utils.toRunnable(promise));
+
+        releaseCachePriorities(removed);
+    }
+
+    @Override
+    public void setQueue(List<Track> tracks, int startIndex, long startPosition, Promise promise) {
+        if(startIndex < 0 || startIndex >= tracks.size()) {
+            promise.reject("invalid_index", "The start index is out of the queue bounds");
+            return;
+        }
+
+        if(replacingQueue) {
+            promise.reject("queue_busy", "The queue is already being replaced");
+            return;
+        }
+
+        Track previous = getCurrentTrack();
+        long position = player.getCurrentPosition();
+
+        List<MediaSource> trackList = new ArrayList<>();
+
+        for(Track track : tracks) {
+            trackList.add(createMediaSource(track));
+        }
+
+        List<Track> removed = queue.snapshot();
+        int oldSize = removed.size();
+
+        if(player.getPlaybackState() == Player.STATE_IDLE) {
+            // Nothing is loaded, so the source is simply replaced and prepared at the start track
+            queue.clear();
+            queue.addAll(tracks);
+
+            source = createConcatenatingSource();
+            source.addMediaSources(trackList);
+
+            lastKnownWindow = startIndex;
+            lastKnownPosition = startPosition == C.TIME_UNSET ? 0 : startPosition;
 
-        for (int i = queue.size() - 1; i > currentIndex; i--) {
-            queue.remove(i);
-            source.removeMediaSource(i, null);
+            player.prepare(source, true, true);
+            prepared = true;
+            seekToStart(startIndex, startPosition);
+
+            onQueueReplaced(tracks, removed, previous, position, promise);
+            return;
+        }
+
+        // Swaps the contents of the live source, keeping the player, its renderers and the notification.
+        // The new tracks are appended first, as removing the playing track before seeking away from it
+        // would end the playback. Track changes are only reported once the swap is done
+        replacingQueue = true;
+        ConcatenatingMediaSource target = source;
+
+        queue.addAll(tracks);
+        source.addMediaSources(oldSize, trackList, () -> {
+            // The queue was reset in the meantime
+            if(source != target) {
+                promise.reject("queue_changed", "The queue was reset while it was being replaced");
+                return;
+            }
+
+            seekToStart(oldSize + startIndex, startPosition);
+            prepared = true;
+            loadWindow();
+
+            Runnable finish = () -> {
+                if(source != target) {
+                    promise.reject("queue_changed", "The queue was reset while it was being replaced");
+                    return;
+                }
+
+                replacingQueue = false;
+
+                lastKnownWindow = player.getCurrentWindowIndex();
+                lastKnownPosition = player.getCurrentPosition();
+
+                onQueueReplaced(tracks, removed, previous, position, promise);
+            };
+
+            if(oldSize == 0) {
+                finish.run();
+            } else {
+                queue.removeRange(0, oldSize);
+                source.removeMediaSourceRange(0, oldSize, finish);
+            }
+        });
+    }
+
+    private void seekToStart(int index, long position) {
+        if(position == C.TIME_UNSET) {
+            player.seekToDefaultPosition(index);
+        } else {
+            player.seekTo(index, position);
+        }
+    }
+
+    private void onQueueReplaced(List<Track> tracks, List<Track> removed, Track previous, long position, Promise promise) {
+        updateCachePriorities(tracks);
+        releaseCachePriorities(removed);
+        loadWindow();
+        prefetchUpcoming();
+        recordCacheAccess();
+
+        manager.onTrackUpdate(previous, position, getCurrentTrack());
+        promise.resolve(null);
+    }
+
+    private ConcatenatingMediaSource createConcatenatingSource() {
+        if(lazyLoad) {
+            // Only prepares the track sources when the player needs them
+            return new ConcatenatingMediaSource(false, true, new DefaultShuffleOrder(0));
+        } else {
+            return new ConcatenatingMediaSource();
         }
     }
 
     private void resetQueue() {
+        List<Track> removed = queue.snapshot();
         queue.clear();
+        releaseCachePriorities(removed);
+        accessedTrack = null;
+        replacingQueue = false;
 
-        source = new ConcatenatingMediaSource();
+        source = createConcatenatingSource();
         player.prepare(source, true, true);
         prepared = false; // We set it to false as the queue is now empty
 
@@ -183,28 +650,79 @@ public class LocalPlayback extends ExoPlayback<SimpleExoPlayer> {
     public void onPlayerStateChanged(boolean playWhenReady, int playbackState) {
         if(playbackState == Player.STATE_ENDED) {
             prepared = false;
+
+            // Playing it again counts as another play
+            accessedTrack = null;
         }
 
         super.onPlayerStateChanged(playWhenReady, playbackState);
+        recordCacheAccess();
+    }
+
+    @Override
+    public void onPositionDiscontinuity(int reason) {
+        if(replacingQueue) {
+            // The window indexes are in flux, the track change is reported once the queue is replaced
+            lastKnownWindow = player.getCurrentWindowIndex();
+            lastKnownPosition = player.getCurrentPosition();
+            return;
+        }
+
+        super.onPositionDiscontinuity(reason);
+        loadWindow();
+        prefetchUpcoming();
+        recordCacheAccess();
     }
 
     @Override
     public void onPlayerError(ExoPlaybackException error) {
         prepared = false;
+
+        if(offline.get() && error.type == ExoPlaybackException.TYPE_SOURCE
+                && OfflineDataSource.isCausedByOffline(error.getSourceException())) {
+            // The track isn't cached, skips to the next one that can be played instead
+            if(skipToAvailable(player.getCurrentWindowIndex() + 1)) return;
+        }
+
         super.onPlayerError(error);
     }
 
+    /**
+     * Skips to the first track from the given index that is available offline
+     *
+     * @return Whether a track was found
+     */
+    private boolean skipToAvailable(int from) {
+        int index = -1;
+
+        synchronized(queue) {
+            for(int i = Math.max(from, 0); i < queue.size(); i++) {
+                if(isAvailableOffline(queue.get(i))) {
+                    index = i;
+                    break;
+                }
+            }
+        }
+
+        if(index == -1) return false;
+
+        Log.d(Utils.LOG, "Skipping to the next track available offline: " + index);
+
+        lastKnownWindow = player.getCurrentWindowIndex();
+        lastKnownPosition = player.getCurrentPosition();
+
+        seekToDefaultPosition(index);
+        prepare();
+        return true;
+    }
+
     @Override
     public void destroy() {
         super.destroy();
 
-        if(cache != null) {
-            try {
-                cache.release();
-                cache = null;
-            } catch(Exception ex) {
-                Log.w(Utils.LOG, "Couldn't release the cache properly", ex);
-            }
+        if(prefetcher != null) {
+            prefetcher.release();
+            prefetcher = null;
         }
     }
 
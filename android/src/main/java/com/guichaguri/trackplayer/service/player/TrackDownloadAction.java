@@ -0,0 +1,75 @@
+package com.guichaguri.trackplayer.service.player;
+
+import com.google.android.exoplayer2.offline.DownloadAction;
+import com.google.android.exoplayer2.offline.Downloader;
+import com.google.android.exoplayer2.offline.DownloaderConstructorHelper;
+import com.google.android.exoplayer2.offline.StreamKey;
+import com.google.android.exoplayer2.upstream.DataSource;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Wraps a {@link DownloadAction} so the download is made with the user agent of its track
+ *
+ * The user agent is persisted along with the wrapped action, so resumed downloads keep using it.
+ */
+public class TrackDownloadAction extends DownloadAction {
+
+    private static final String TYPE = "trackplayer";
+    private static final int VERSION = 0;
+
+    /**
+     * Provides the http source factory for a user agent
+     */
+    public interface UpstreamProvider {
+        DataSource.Factory getUpstream(String userAgent);
+    }
+
+    public static Deserializer createDeserializer(UpstreamProvider provider) {
+        return new Deserializer(TYPE, VERSION) {
+            @Override
+            public DownloadAction readFromStream(int version, DataInputStream input) throws IOException {
+                String userAgent = input.readBoolean() ? input.readUTF() : null;
+                DownloadAction action = DownloadAction.deserializeFromStream(getDefaultDeserializers(), input);
+                return new TrackDownloadAction(action, userAgent, provider);
+            }
+        };
+    }
+
+    private final DownloadAction action;
+    private final String userAgent;
+    private final UpstreamProvider provider;
+
+    public TrackDownloadAction(DownloadAction action, String userAgent, UpstreamProvider provider) {
+        super(TYPE, VERSION, action.uri, action.isRemoveAction, action.data);
+        this.action = action;
+        this.userAgent = userAgent;
+        this.provider = provider;
+    }
+
+    @Override
+    public boolean isSameMedia(DownloadAction other) {
+        if(other instanceof TrackDownloadAction) other = ((TrackDownloadAction)other).action;
+        return action.isSameMedia(other);
+    }
+
+    @Override
+    public List<StreamKey> getKeys() {
+        return action.getKeys();
+    }
+
+    @Override
+    protected void writeToStream(DataOutputStream output) throws IOException {
+        output.writeBoolean(userAgent != null);
+        if(userAgent != null) output.writeUTF(userAgent);
+        DownloadAction.serializeToStream(action, output);
+    }
+
+    @Override
+    public Downloader createDownloader(DownloaderConstructorHelper helper) {
+        return action.createDownloader(new DownloaderConstructorHelper(helper.getCache(), provider.getUpstream(userAgent)));
+    }
+
+}
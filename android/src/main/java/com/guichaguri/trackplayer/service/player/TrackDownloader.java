@@ -0,0 +1,198 @@
+package com.guichaguri.trackplayer.service.player;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.Handler;
+import com.google.android.exoplayer2.offline.DownloadAction;
+import com.google.android.exoplayer2.offline.DownloadManager;
+import com.google.android.exoplayer2.offline.DownloadManager.TaskState;
+import com.google.android.exoplayer2.offline.DownloaderConstructorHelper;
+import com.google.android.exoplayer2.offline.ProgressiveDownloadAction;
+import com.google.android.exoplayer2.offline.StreamKey;
+import com.google.android.exoplayer2.source.dash.offline.DashDownloadAction;
+import com.google.android.exoplayer2.source.hls.offline.HlsDownloadAction;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.guichaguri.trackplayer.service.MusicManager;
+import com.guichaguri.trackplayer.service.Utils;
+import com.guichaguri.trackplayer.service.models.Track;
+import com.guichaguri.trackplayer.service.models.TrackType;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Downloads whole tracks into the download cache, so they can be played without network
+ *
+ * Pending downloads are persisted by the {@link DownloadManager} and resumed from the cached spans on the next start.
+ * Completed downloads are kept in an index. The download cache is never evicted, so every file and segment
+ * written by a download stays until the download is removed.
+ */
+public class TrackDownloader implements DownloadManager.Listener {
+
+    private static final String PREFERENCES = "TrackPlayerDownloads";
+    private static final String KEYS_PREFERENCES = "TrackPlayerDownloadKeys";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int PROGRESS_INTERVAL = 1000;
+
+    private final Context context;
+    private final MusicManager manager;
+    private final Handler handler;
+    private final DownloadManager downloadManager;
+    private final SharedPreferences index;
+    private final SharedPreferences keys;
+    private final TrackDownloadAction.UpstreamProvider upstream;
+
+    private final Runnable progressUpdater = this::updateProgress;
+    private boolean updatingProgress = false;
+
+    /**
+     * @param cache The cache the downloads are written to
+     * @param upstream Provides the http source factory for the user agent of each track
+     */
+    public TrackDownloader(Context context, MusicManager manager, Handler handler, Cache cache,
+                           TrackDownloadAction.UpstreamProvider upstream, int maxDownloads) {
+        this.context = context;
+        this.manager = manager;
+        this.handler = handler;
+        this.index = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+        this.keys = context.getSharedPreferences(KEYS_PREFERENCES, Context.MODE_PRIVATE);
+        this.upstream = upstream;
+
+        File actionFile = new File(context.getFilesDir(), "TrackPlayerDownloads.actions");
+
+        // Actions persisted without a user agent are still read with the default deserializers
+        List<DownloadAction.Deserializer> deserializers = new ArrayList<>(Arrays.asList(DownloadAction.getDefaultDeserializers()));
+        deserializers.add(TrackDownloadAction.createDeserializer(upstream));
+
+        downloadManager = new DownloadManager(new DownloaderConstructorHelper(cache, upstream.getUpstream(null)), maxDownloads,
+                DownloadManager.DEFAULT_MIN_RETRY_COUNT, actionFile,
+                deserializers.toArray(new DownloadAction.Deserializer[deserializers.size()]));
+        downloadManager.addListener(this);
+        downloadManager.startDownloads();
+    }
+
+    /**
+     * Queues the download of a track
+     *
+     * @param cacheKey The key the track is cached under, used by progressive tracks
+     */
+    public void download(Track track, String cacheKey) {
+        // Adaptive streams are cached by segment, only progressive tracks have a single key
+        if(track.type == TrackType.DEFAULT) keys.edit().putString(track.id, cacheKey).apply();
+
+        downloadManager.handleAction(createAction(track, cacheKey, false));
+    }
+
+    /**
+     * Cancels the download of a track and removes its content from the cache
+     */
+    public void remove(Track track, String cacheKey) {
+        downloadManager.handleAction(createAction(track, cacheKey, true));
+    }
+
+    /**
+     * Whether the track can be downloaded
+     */
+    public static boolean isSupported(Track track) {
+        return track.resourceId == 0 && !Utils.isLocal(track.uri) && track.type != TrackType.SMOOTH_STREAMING;
+    }
+
+    /**
+     * Gets the ids of the completed downloads along with their cache keys
+     */
+    public Bundle getDownloads() {
+        Bundle bundle = new Bundle();
+
+        for(Map.Entry<String, ?> entry : index.getAll().entrySet()) {
+            bundle.putString(entry.getKey(), String.valueOf(entry.getValue()));
+        }
+
+        return bundle;
+    }
+
+    private DownloadAction createAction(Track track, String cacheKey, boolean remove) {
+        return new TrackDownloadAction(createTypeAction(track, cacheKey, remove), track.userAgent, upstream);
+    }
+
+    private DownloadAction createTypeAction(Track track, String cacheKey, boolean remove) {
+        byte[] data = track.id.getBytes(UTF_8);
+
+        switch(track.type) {
+            case DASH:
+                return remove ? DashDownloadAction.createRemoveAction(track.uri, data)
+                        : DashDownloadAction.createDownloadAction(track.uri, data, Collections.<StreamKey>emptyList());
+            case HLS:
+                return remove ? HlsDownloadAction.createRemoveAction(track.uri, data)
+                        : HlsDownloadAction.createDownloadAction(track.uri, data, Collections.<StreamKey>emptyList());
+            default:
+                return remove ? ProgressiveDownloadAction.createRemoveAction(track.uri, data, cacheKey)
+                        : ProgressiveDownloadAction.createDownloadAction(track.uri, data, cacheKey);
+        }
+    }
+
+    private void updateProgress() {
+        boolean active = false;
+
+        for(TaskState state : downloadManager.getAllTaskStates()) {
+            if(state.state != TaskState.STATE_STARTED || state.action.isRemoveAction) continue;
+
+            active = true;
+            onTaskUpdate(state);
+        }
+
+        updatingProgress = active;
+        if(active) handler.postDelayed(progressUpdater, PROGRESS_INTERVAL);
+    }
+
+    private void onTaskUpdate(TaskState state) {
+        String id = new String(state.action.data, UTF_8);
+
+        manager.onDownloadUpdate(id, TaskState.getStateString(state.state), state.action.isRemoveAction,
+                state.downloadPercentage, state.downloadedBytes);
+    }
+
+    @Override
+    public void onInitialized(DownloadManager downloadManager) {
+        // Resumed downloads will report their progress
+        updateProgress();
+    }
+
+    @Override
+    public void onTaskStateChanged(DownloadManager downloadManager, TaskState state) {
+        String id = new String(state.action.data, UTF_8);
+        String key = keys.getString(id, null);
+
+        if(state.state == TaskState.STATE_COMPLETED) {
+            if(state.action.isRemoveAction) {
+                index.edit().remove(id).apply();
+                keys.edit().remove(id).apply();
+            } else {
+                index.edit().putString(id, key != null ? key : state.action.uri.toString()).apply();
+            }
+        }
+
+        onTaskUpdate(state);
+
+        if(state.state == TaskState.STATE_STARTED && !updatingProgress) {
+            updatingProgress = true;
+            handler.postDelayed(progressUpdater, PROGRESS_INTERVAL);
+        }
+    }
+
+    @Override
+    public void onIdle(DownloadManager downloadManager) {
+        handler.removeCallbacks(progressUpdater);
+        updatingProgress = false;
+    }
+
+    public void release() {
+        handler.removeCallbacks(progressUpdater);
+        downloadManager.release();
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.guichaguri.trackplayer.service.player;
+
+import android.util.Log;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheUtil;
+import com.guichaguri.trackplayer.service.Utils;
+import com.guichaguri.trackplayer.service.metadata.SimpleCacheManager;
+import com.guichaguri.trackplayer.service.models.Track;
+import com.guichaguri.trackplayer.service.models.TrackType;
+import com.guichaguri.trackplayer.util.ThrottledDataSource;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Downloads the beginning of the upcoming tracks into the cache in a background thread
+ */
+public class TrackPrefetcher {
+
+    private final LocalPlayback playback;
+    private final long size;
+    private final long bandwidth;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "TrackPlayer-Prefetcher");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private AtomicBoolean canceled = new AtomicBoolean();
+
+    /**
+     * @param size The amount of bytes to prefetch per track
+     * @param bandwidth The maximum speed in bytes per second, or 0 for no limit
+     */
+    public TrackPrefetcher(LocalPlayback playback, long size, long bandwidth) {
+        this.playback = playback;
+        this.size = size;
+        this.bandwidth = bandwidth;
+    }
+
+    /**
+     * Cancels the current prefetching and starts prefetching the given tracks in order
+     */
+    public synchronized void prefetch(List<Track> tracks) {
+        canceled.set(true);
+
+        if(tracks.isEmpty()) return;
+
+        AtomicBoolean isCanceled = new AtomicBoolean();
+        canceled = isCanceled;
+
+        executor.execute(() -> {
+            for(Track track : tracks) {
+                if(isCanceled.get()) return;
+                prefetch(track, isCanceled);
+            }
+        });
+    }
+
+    private void prefetch(Track track, AtomicBoolean isCanceled) {
+        // Adaptive streams are split into segments, only progressive tracks can be prefetched
+        if(track.type != TrackType.DEFAULT || track.resourceId != 0 || Utils.isLocal(track.uri)) return;
+
+        // The cache might still be loading
+        Cache cache = SimpleCacheManager.INSTANCE.getCache();
+        if(cache == null) return;
+
+        DataSpec spec = new DataSpec(track.uri, 0, size, playback.getCacheKey(track));
+        DataSource upstream = playback.getHttpDataSourceFactory(track.userAgent).createDataSource();
+
+        if(bandwidth > 0) upstream = new ThrottledDataSource(upstream, bandwidth);
+
+        try {
+            CacheUtil.cache(spec, cache, upstream, null, isCanceled);
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch(Exception ex) {
+            Log.w(Utils.LOG, "Couldn't prefetch " + track.id, ex);
+        }
+    }
+
+    public synchronized void release() {
+        canceled.set(true);
+        executor.shutdownNow();
+
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.guichaguri.trackplayer.util;
+
+import android.net.Uri;
+import android.support.annotation.Nullable;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link DataSource} that assigns a normalized cache key to the requests that don't have a custom one.
+ *
+ * A key equal to the uri is the default key, which an outer cache source might have assigned, so it's normalized too.
+ */
+public final class CacheKeyDataSource implements DataSource {
+
+    private final DataSource upstream;
+    private final CacheKeyNormalizer normalizer;
+
+    public CacheKeyDataSource(DataSource upstream, CacheKeyNormalizer normalizer) {
+        this.upstream = upstream;
+        this.normalizer = normalizer;
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+        upstream.addTransferListener(transferListener);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        if(dataSpec.key == null || dataSpec.key.equals(dataSpec.uri.toString())) {
+            String key = normalizer.getKey(dataSpec.uri);
+            dataSpec = new DataSpec(dataSpec.uri, dataSpec.httpMethod, dataSpec.httpBody, dataSpec.absoluteStreamPosition,
+                    dataSpec.position, dataSpec.length, key, dataSpec.flags);
+        }
+
+        return upstream.open(dataSpec);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        return upstream.read(buffer, offset, readLength);
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+        return upstream.getUri();
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+        return upstream.getResponseHeaders();
+    }
+
+    @Override
+    public void close() throws IOException {
+        upstream.close();
+    }
+
+}
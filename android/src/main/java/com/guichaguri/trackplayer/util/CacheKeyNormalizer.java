@@ -0,0 +1,42 @@
+package com.guichaguri.trackplayer.util;
+
+import android.net.Uri;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Builds cache keys that ignore the query parameters that change between sessions, such as signatures and tokens.
+ */
+public final class CacheKeyNormalizer {
+
+    /**
+     * The parameter name that ignores the whole query
+     */
+    public static final String ALL_PARAMETERS = "*";
+
+    private final Set<String> ignoredParameters;
+
+    public CacheKeyNormalizer(Collection<String> ignoredParameters) {
+        this.ignoredParameters = new HashSet<>(ignoredParameters);
+    }
+
+    public String getKey(Uri uri) {
+        if(uri.getQuery() == null) return uri.toString();
+
+        Uri.Builder builder = uri.buildUpon().clearQuery();
+
+        if(!ignoredParameters.contains(ALL_PARAMETERS)) {
+            for(String name : uri.getQueryParameterNames()) {
+                if(ignoredParameters.contains(name)) continue;
+
+                for(String value : uri.getQueryParameters(name)) {
+                    builder.appendQueryParameter(name, value);
+                }
+            }
+        }
+
+        return builder.build().toString();
+    }
+
+}
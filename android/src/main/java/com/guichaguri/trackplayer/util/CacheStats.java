@@ -0,0 +1,84 @@
+package com.guichaguri.trackplayer.util;
+
+import android.os.Bundle;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counters for the shared cache, used to tune its size
+ */
+public final class CacheStats {
+
+    // Limits how many tracks are individually tracked
+    private static final int MAX_TRACKED_KEYS = 500;
+
+    private long bytesFromCache = 0;
+    private long bytesFromNetwork = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    private final Map<String, long[]> keys = new LinkedHashMap<String, long[]>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Entry<String, long[]> eldest) {
+            return size() > MAX_TRACKED_KEYS;
+        }
+    };
+
+    /**
+     * Registers a finished read
+     *
+     * @param key The cache key of the content
+     * @param totalBytes The amount of bytes read
+     * @param networkBytes The amount of bytes that had to be read from the network
+     */
+    public synchronized void onRead(String key, long totalBytes, long networkBytes) {
+        if(totalBytes <= 0) return;
+
+        bytesFromNetwork += networkBytes;
+        bytesFromCache += totalBytes - networkBytes;
+
+        long[] counters = keys.get(key);
+
+        if(counters == null) {
+            counters = new long[2];
+            keys.put(key, counters);
+        }
+
+        if(networkBytes == 0) {
+            hits++;
+            counters[0]++;
+        } else {
+            misses++;
+            counters[1]++;
+        }
+    }
+
+    public synchronized void onEviction() {
+        evictions++;
+    }
+
+    public synchronized Bundle toBundle(long cacheSize, long maxCacheSize) {
+        Bundle bundle = new Bundle();
+        bundle.putDouble("bytesFromCache", bytesFromCache);
+        bundle.putDouble("bytesFromNetwork", bytesFromNetwork);
+        bundle.putDouble("hits", hits);
+        bundle.putDouble("misses", misses);
+        bundle.putDouble("evictions", evictions);
+        bundle.putDouble("cacheSize", cacheSize);
+        bundle.putDouble("maxCacheSize", maxCacheSize);
+
+        Bundle tracks = new Bundle();
+
+        for(Map.Entry<String, long[]> entry : keys.entrySet()) {
+            Bundle track = new Bundle();
+            track.putDouble("hits", entry.getValue()[0]);
+            track.putDouble("misses", entry.getValue()[1]);
+            tracks.putBundle(entry.getKey(), track);
+        }
+
+        bundle.putBundle("tracks", tracks);
+        return bundle;
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.guichaguri.trackplayer.util;
+
+import android.net.Uri;
+import android.support.annotation.Nullable;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link DataSource} that reports to {@link CacheStats} how many bytes of each read came from the network.
+ *
+ * It should wrap the cache data source, while {@link #wrapUpstream(DataSource)} wraps its network source.
+ */
+public final class CacheStatsDataSource implements DataSource {
+
+    private final CacheStats stats;
+    private DataSource cacheSource;
+
+    private String key;
+    private long totalBytes;
+    private long networkBytes;
+
+    public CacheStatsDataSource(CacheStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Wraps the network source, counting the bytes read from it
+     */
+    public DataSource wrapUpstream(DataSource upstream) {
+        return new NetworkDataSource(upstream);
+    }
+
+    /**
+     * Sets the cache data source that reads through the wrapped upstream
+     */
+    public void setCacheSource(DataSource cacheSource) {
+        this.cacheSource = cacheSource;
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+        cacheSource.addTransferListener(transferListener);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        key = dataSpec.key != null ? dataSpec.key : dataSpec.uri.toString();
+        totalBytes = 0;
+        networkBytes = 0;
+
+        return cacheSource.open(dataSpec);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        int read = cacheSource.read(buffer, offset, readLength);
+        if(read > 0) totalBytes += read;
+        return read;
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+        return cacheSource.getUri();
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+        return cacheSource.getResponseHeaders();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            cacheSource.close();
+        } finally {
+            if(key != null) stats.onRead(key, totalBytes, networkBytes);
+
+            key = null;
+            totalBytes = 0;
+            networkBytes = 0;
+        }
+    }
+
+    private class NetworkDataSource implements DataSource {
+
+        private final DataSource upstream;
+
+        NetworkDataSource(DataSource upstream) {
+            this.upstream = upstream;
+        }
+
+        @Override
+        public void addTransferListener(TransferListener transferListener) {
+            upstream.addTransferListener(transferListener);
+        }
+
+        @Override
+        public long open(DataSpec dataSpec) throws IOException {
+            return upstream.open(dataSpec);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int readLength) throws IOException {
+            int read = upstream.read(buffer, offset, readLength);
+            if(read > 0) networkBytes += read;
+            return read;
+        }
+
+        @Nullable
+        @Override
+        public Uri getUri() {
+            return upstream.getUri();
+        }
+
+        @Override
+        public Map<String, List<String>> getResponseHeaders() {
+            return upstream.getResponseHeaders();
+        }
+
+        @Override
+        public void close() throws IOException {
+            upstream.close();
+        }
+
+    }
+
+}
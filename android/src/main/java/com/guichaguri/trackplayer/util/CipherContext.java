@@ -0,0 +1,24 @@
+package com.guichaguri.trackplayer.util;
+
+/**
+ * Decrypts the data of a local file while it's read.
+ *
+ * A context is created every time the file is opened and is only used by the thread reading it.
+ * Each call gets the absolute position of the data in the file, so stream and block ciphers
+ * such as AES-CTR can start from any position without decrypting what comes before it.
+ *
+ * If the context also implements {@link java.io.Closeable}, it's closed along with the file.
+ */
+public interface CipherContext {
+
+    /**
+     * Decrypts the data in place
+     *
+     * @param buffer The buffer containing the encrypted data
+     * @param offset The start offset in the buffer
+     * @param length The amount of bytes to decrypt
+     * @param position The absolute position in the file of the first byte
+     */
+    void decrypt(byte[] buffer, int offset, int length, long position);
+
+}
@@ -0,0 +1,102 @@
+package com.guichaguri.trackplayer.util;
+
+import android.content.ComponentCallbacks2;
+import android.util.LruCache;
+
+/**
+ * An in-memory cache of decrypted blocks of local files, shared by the whole process.
+ *
+ * Blocks are keyed by the file path, its modification time, the block size and the block position,
+ * so a file that is replaced never gets stale data. The least recently used blocks are evicted first
+ * once the total size reaches the limit.
+ */
+public enum DecryptedBlockCache {
+
+    INSTANCE;
+
+    private LruCache<String, byte[]> blocks;
+
+    /**
+     * Sets the maximum amount of bytes kept in memory, or 0 to disable the cache
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        if(maxSize <= 0) {
+            blocks = null;
+        } else if(blocks == null || blocks.maxSize() != maxSize) {
+            blocks = new LruCache<String, byte[]>(maxSize) {
+                @Override
+                protected int sizeOf(String key, byte[] value) {
+                    return value.length;
+                }
+            };
+        }
+    }
+
+    public synchronized boolean isEnabled() {
+        return blocks != null;
+    }
+
+    /**
+     * Creates the key of a block
+     */
+    public static String getKey(String path, long lastModified, int blockSize, long position) {
+        return path + '|' + lastModified + '|' + blockSize + '|' + position;
+    }
+
+    /**
+     * Copies a cached block into the buffer
+     *
+     * @return The length of the block or -1 if it isn't cached
+     */
+    public int get(String key, byte[] buffer) {
+        byte[] block;
+
+        synchronized(this) {
+            if(blocks == null) return -1;
+            block = blocks.get(key);
+        }
+
+        if(block == null) return -1;
+
+        System.arraycopy(block, 0, buffer, 0, block.length);
+        return block.length;
+    }
+
+    /**
+     * Stores a copy of the decrypted block
+     */
+    public void put(String key, byte[] buffer, int length) {
+        if(!isEnabled()) return;
+
+        byte[] block = new byte[length];
+        System.arraycopy(buffer, 0, block, 0, length);
+
+        synchronized(this) {
+            if(blocks != null) blocks.put(key, block);
+        }
+    }
+
+    public synchronized void clear() {
+        if(blocks != null) blocks.evictAll();
+    }
+
+    /**
+     * Releases memory according to the level given by {@link ComponentCallbacks2#onTrimMemory(int)}
+     */
+    public synchronized void trimMemory(int level) {
+        if(blocks == null) return;
+
+        // Hiding the UI doesn't mean memory is low
+        if(level == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) return;
+
+        if(level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            // Also matches the background levels, in which the process is likely to be killed
+            blocks.evictAll();
+        } else if(level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            blocks.trimToSize(blocks.maxSize() / 4);
+        } else if(level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            blocks.trimToSize(blocks.maxSize() / 2);
+        }
+    }
+
+}
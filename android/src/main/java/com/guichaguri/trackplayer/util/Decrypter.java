@@ -0,0 +1,18 @@
+package com.guichaguri.trackplayer.util;
+
+import android.net.Uri;
+
+/**
+ * Creates the cipher contexts that decrypt local files.
+ *
+ * The decrypter is shared by the whole process and is called concurrently from every loader thread,
+ * so it must be thread-safe. The contexts it creates are only used by one thread at a time.
+ */
+public interface Decrypter {
+
+    /**
+     * Creates the context that decrypts the given file, called every time it's opened
+     */
+    CipherContext createCipherContext(Uri uri);
+
+}
@@ -0,0 +1,61 @@
+package com.guichaguri.trackplayer.util;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import com.guichaguri.trackplayer.service.Utils;
+import java.lang.reflect.Field;
+
+/**
+ * Holds the {@link Decrypter} used by every {@link FileDecryptionDataSource} in the process.
+ *
+ * The {@link com.guichaguri.trackplayer.TrackPlayer} package registers itself when it's created.
+ * For apps that only keep it in a {@code mTrackPlayer} field of their application, the field is looked up
+ * once by reflection and the result is kept for the lifetime of the process.
+ */
+public final class DecrypterProvider {
+
+    private static volatile Decrypter decrypter;
+    private static boolean lookedUp = false;
+
+    private DecrypterProvider() {}
+
+    /**
+     * Sets the decrypter used for every local encrypted file opened from now on
+     */
+    public static void register(Decrypter decrypter) {
+        DecrypterProvider.decrypter = decrypter;
+    }
+
+    /**
+     * Gets the registered decrypter
+     *
+     * @return The decrypter or {@code null} if none is available
+     */
+    @Nullable
+    public static Decrypter get(Context context) {
+        Decrypter d = decrypter;
+        if(d != null) return d;
+
+        synchronized(DecrypterProvider.class) {
+            if(decrypter == null && !lookedUp) {
+                lookedUp = true;
+                decrypter = lookUp(context.getApplicationContext());
+            }
+            return decrypter;
+        }
+    }
+
+    private static Decrypter lookUp(Context context) {
+        try {
+            Field field = context.getClass().getDeclaredField("mTrackPlayer");
+            field.setAccessible(true);
+            Object value = field.get(context);
+            return value instanceof Decrypter ? (Decrypter)value : null;
+        } catch(Exception ex) {
+            Log.w(Utils.LOG, "No decrypter is registered, local files won't be decrypted", ex);
+            return null;
+        }
+    }
+
+}
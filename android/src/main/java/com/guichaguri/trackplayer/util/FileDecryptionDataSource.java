@@ -9,12 +9,15 @@ import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.FileDataSource;
 import com.google.android.exoplayer2.upstream.TransferListener;
-import com.guichaguri.trackplayer.TrackPlayer;
 
+import java.io.Closeable;
 import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.List;
 import java.util.Map;
 
@@ -23,8 +26,30 @@ import java.util.Map;
  */
 public final class FileDecryptionDataSource implements DataSource {
 
+    /**
+     * How the file is read
+     */
+    public enum IoMode {
+        /**
+         * Reads and decrypts straight into the buffer of each read
+         */
+        DIRECT,
+        /**
+         * Reads ahead into a reusable buffer through a {@link FileChannel}, decrypting a whole block at once
+         */
+        BUFFERED,
+        /**
+         * Maps a window of the file into memory, decrypting a whole block at once
+         */
+        MAPPED
+    }
+
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    // Only a window around the read position is mapped, so large files don't exhaust the address space
+    private static final int MAP_WINDOW_SIZE = 8 * 1024 * 1024;
 
-    private TrackPlayer mVideoPackage;
+    private final Decrypter decrypter;
 
     /**
      * Thrown when IOException is encountered during local file read operation.
@@ -44,6 +69,24 @@ public final class FileDecryptionDataSource implements DataSource {
     private long bytesRemaining;
     private boolean opened;
     private boolean mDecrypt;
+    private CipherContext cipher;
+
+    private final IoMode ioMode;
+    private final int blockSize;
+    private final boolean parallel;
+
+    // Block mode state. The block is aligned to the block size and kept between opens
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private long mappedPosition;
+    private long size;
+    private byte[] block;
+    private ByteBuffer blockBuffer;
+    private long blockPosition;
+    private int blockLength;
+    private long position;
+    private String path;
+    private long lastModified;
 
     public FileDecryptionDataSource(Context context) {
         this(context, null, true);
@@ -53,15 +96,35 @@ public final class FileDecryptionDataSource implements DataSource {
      * @param listener An optional listener.
      */
     public FileDecryptionDataSource(Context context, TransferListener listener, boolean decrypt) {
+        this(context, listener, decrypt, IoMode.DIRECT, DEFAULT_BLOCK_SIZE, false);
+    }
+
+    /**
+     * @param listener An optional listener.
+     * @param ioMode How the file is read
+     * @param blockSize The amount of bytes read and decrypted at once, ignored in {@link IoMode#DIRECT}
+     * @param parallel Whether large reads are decrypted by {@link ParallelDecryptor}
+     */
+    public FileDecryptionDataSource(Context context, TransferListener listener, boolean decrypt,
+                                    IoMode ioMode, int blockSize, boolean parallel) {
+        this(decrypt ? DecrypterProvider.get(context) : null, listener, decrypt, ioMode, blockSize, parallel);
+    }
+
+    /**
+     * @param decrypter The decrypter used instead of the registered one
+     * @param listener An optional listener.
+     * @param ioMode How the file is read
+     * @param blockSize The amount of bytes read and decrypted at once, ignored in {@link IoMode#DIRECT}
+     * @param parallel Whether large reads are decrypted by {@link ParallelDecryptor}
+     */
+    public FileDecryptionDataSource(Decrypter decrypter, TransferListener listener, boolean decrypt,
+                                    IoMode ioMode, int blockSize, boolean parallel) {
         this.listener = listener;
-        try {
-            Field field = context.getClass().getDeclaredField("mTrackPlayer");
-            field.setAccessible(true);
-            mVideoPackage = (TrackPlayer) field.get(context);
-            this.mDecrypt = decrypt;
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        this.ioMode = ioMode;
+        this.parallel = parallel;
+        this.blockSize = blockSize > 0 ? blockSize : DEFAULT_BLOCK_SIZE;
+        this.mDecrypt = decrypt;
+        this.decrypter = decrypt ? decrypter : null;
     }
 
     @Override
@@ -74,12 +137,23 @@ public final class FileDecryptionDataSource implements DataSource {
         try {
             uri = dataSpec.uri;
             file = new RandomAccessFile(dataSpec.uri.getPath(), "r");
-            file.seek(dataSpec.position);
+
+            if (ioMode == IoMode.DIRECT) {
+                file.seek(dataSpec.position);
+            } else {
+                openChannel();
+            }
+
+            position = dataSpec.position;
             bytesRemaining = dataSpec.length == C.LENGTH_UNSET ? file.length() - dataSpec.position
                     : dataSpec.length;
             if (bytesRemaining < 0) {
                 throw new EOFException();
             }
+
+            if (decrypter != null && this.mDecrypt) {
+                cipher = decrypter.createCipherContext(uri);
+            }
         } catch (IOException e) {
             throw new FileDataSource.FileDataSourceException(e);
         }
@@ -92,18 +166,142 @@ public final class FileDecryptionDataSource implements DataSource {
         return bytesRemaining;
     }
 
+    private void openChannel() throws IOException {
+        channel = file.getChannel();
+
+        size = channel.size();
+        mapped = null;
+
+        if (block == null) {
+            block = new byte[blockSize];
+            blockBuffer = ByteBuffer.wrap(block);
+        }
+
+        // The block might belong to another file
+        blockLength = 0;
+
+        path = uri.getPath();
+        lastModified = new File(path).lastModified();
+    }
+
+    /**
+     * Reads and decrypts the block that contains the current position
+     *
+     * @return Whether anything was read
+     */
+    private boolean fillBlock() throws IOException {
+        long start = position - position % blockSize;
+        int length = 0;
+
+        // Only decrypted blocks are cached, reading plain ones is cheap enough
+        DecryptedBlockCache cache = DecryptedBlockCache.INSTANCE;
+        String key = cipher != null && cache.isEnabled()
+                ? DecryptedBlockCache.getKey(path, lastModified, blockSize, start) : null;
+
+        if (key != null && (length = cache.get(key, block)) > 0) {
+            blockPosition = start;
+            blockLength = length;
+            return true;
+        }
+
+        length = 0;
+
+        if (ioMode == IoMode.MAPPED) {
+            if (start >= size) return false;
+
+            if (mapped == null || start < mappedPosition || start >= mappedPosition + mapped.capacity()) {
+                mapWindow(start);
+            }
+
+            int offset = (int) (start - mappedPosition);
+            length = Math.min(blockSize, mapped.capacity() - offset);
+
+            mapped.position(offset);
+            mapped.get(block, 0, length);
+        } else {
+            blockBuffer.clear();
+
+            while (blockBuffer.hasRemaining()) {
+                int read = channel.read(blockBuffer, start + length);
+                if (read < 0) break;
+                length += read;
+            }
+
+            if (length == 0) return false;
+        }
+
+        if (cipher != null) {
+            decrypt(block, 0, length, start);
+        }
+
+        if (key != null) {
+            cache.put(key, block, length);
+        }
+
+        blockPosition = start;
+        blockLength = length;
+        return true;
+    }
+
+    /**
+     * Maps the window that contains the given position, releasing the previous one
+     */
+    private void mapWindow(long start) throws IOException {
+        // The window is aligned to the block size, so blocks never cross two windows
+        long window = Math.max(blockSize, MAP_WINDOW_SIZE - MAP_WINDOW_SIZE % blockSize);
+        long windowStart = start - start % window;
+
+        mapped = null;
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(window, size - windowStart));
+        mappedPosition = windowStart;
+    }
+
+    private void decrypt(byte[] buffer, int offset, int length, long position) {
+        if (parallel) {
+            ParallelDecryptor.decrypt(cipher, buffer, offset, length, position);
+        } else {
+            cipher.decrypt(buffer, offset, length, position);
+        }
+    }
+
+    private int readBlock(byte[] buffer, int offset, int readLength) throws IOException {
+        if (position < blockPosition || position >= blockPosition + blockLength) {
+            if (!fillBlock()) return C.RESULT_END_OF_INPUT;
+        }
+
+        int start = (int) (position - blockPosition);
+        int count = (int) Math.min(Math.min(bytesRemaining, readLength), blockLength - start);
+
+        System.arraycopy(block, start, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
     @Override
     public int read(byte[] buffer, int offset, int readLength) throws FileDataSource.FileDataSourceException {
         if (readLength == 0) {
             return 0;
         } else if (bytesRemaining == 0) {
             return C.RESULT_END_OF_INPUT;
+        } else if (ioMode != IoMode.DIRECT) {
+            int bytesRead;
+            try {
+                bytesRead = readBlock(buffer, offset, readLength);
+            } catch (IOException e) {
+                throw new FileDataSource.FileDataSourceException(e);
+            }
+
+            if (bytesRead > 0) {
+                bytesRemaining -= bytesRead;
+            }
+
+            return bytesRead;
         } else {
             int bytesRead;
             try {
                 bytesRead = file.read(buffer, offset, (int) Math.min(bytesRemaining, readLength));
-                if (mVideoPackage != null && this.mDecrypt) {
-                    mVideoPackage.decrypt(buffer, offset, (int) Math.min(bytesRemaining, readLength));
+                if (cipher != null && bytesRead > 0) {
+                    decrypt(buffer, offset, bytesRead, position);
                 }
             } catch (IOException e) {
                 throw new FileDataSource.FileDataSourceException(e);
@@ -111,6 +309,7 @@ public final class FileDecryptionDataSource implements DataSource {
 
             if (bytesRead > 0) {
                 bytesRemaining -= bytesRead;
+                position += bytesRead;
                 if (listener != null) {
 //                    listener.onBytesTransferred(this, bytesRead);
                 }
@@ -137,10 +336,16 @@ public final class FileDecryptionDataSource implements DataSource {
             if (file != null) {
                 file.close();
             }
+            if (cipher instanceof Closeable) {
+                ((Closeable) cipher).close();
+            }
         } catch (IOException e) {
             throw new FileDataSource.FileDataSourceException(e);
         } finally {
             file = null;
+            cipher = null;
+            channel = null;
+            mapped = null;
             if (opened) {
                 opened = false;
                 if (listener != null) {
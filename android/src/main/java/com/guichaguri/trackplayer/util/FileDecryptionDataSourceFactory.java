@@ -15,20 +15,31 @@ public final class FileDecryptionDataSourceFactory implements DataSource.Factory
     private final TransferListener listener;
     private Context mContext;
     private boolean mDecrypt;
+    private final FileDecryptionDataSource.IoMode ioMode;
+    private final int blockSize;
+    private final boolean parallel;
 
     public FileDecryptionDataSourceFactory(Context context) {
         this(context, null, true);
     }
 
     public FileDecryptionDataSourceFactory(Context context, TransferListener listener, boolean decrypt) {
+        this(context, listener, decrypt, FileDecryptionDataSource.IoMode.DIRECT, FileDecryptionDataSource.DEFAULT_BLOCK_SIZE, false);
+    }
+
+    public FileDecryptionDataSourceFactory(Context context, TransferListener listener, boolean decrypt,
+                                           FileDecryptionDataSource.IoMode ioMode, int blockSize, boolean parallel) {
         this.listener = listener;
         this.mContext = context;
         this.mDecrypt = decrypt;
+        this.ioMode = ioMode;
+        this.blockSize = blockSize;
+        this.parallel = parallel;
     }
 
     @Override
     public DataSource createDataSource() {
-        return new FileDecryptionDataSource(mContext, listener, mDecrypt);
+        return new FileDecryptionDataSource(mContext, listener, mDecrypt, ioMode, blockSize, parallel);
     }
 
 }
@@ -0,0 +1,74 @@
+package com.guichaguri.trackplayer.util;
+
+import android.net.Uri;
+import android.support.annotation.Nullable;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link DataSource} that fails as soon as it's opened, used instead of the network while offline.
+ *
+ * Placed under a {@code CacheDataSource}, cached spans are still served while anything else
+ * fails immediately instead of waiting for the connection to time out.
+ */
+public final class OfflineDataSource implements DataSource {
+
+    /**
+     * Thrown when content that isn't cached is requested while offline
+     */
+    public static final class OfflineException extends IOException {
+
+        public OfflineException(Uri uri) {
+            super("The content isn't available offline: " + uri);
+        }
+
+    }
+
+    /**
+     * Checks whether the exception, or one of its causes, was thrown by an {@link OfflineDataSource}
+     */
+    public static boolean isCausedByOffline(@Nullable Throwable ex) {
+        while(ex != null) {
+            if(ex instanceof OfflineException) return true;
+            ex = ex.getCause();
+        }
+        return false;
+    }
+
+    /**
+     * Wraps a factory, creating offline sources instead while the flag is set
+     */
+    public static DataSource.Factory wrap(DataSource.Factory upstreamFactory, AtomicBoolean offline) {
+        return () -> offline.get() ? new OfflineDataSource() : upstreamFactory.createDataSource();
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+        // Nothing is ever transferred
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        throw new OfflineException(dataSpec.uri);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        throw new IllegalStateException();
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+        return null;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to close
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.guichaguri.trackplayer.util;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DefaultLoadErrorHandlingPolicy;
+import java.io.IOException;
+
+/**
+ * A load error policy that doesn't retry loads that failed because the content isn't available offline
+ */
+public final class OfflineLoadErrorHandlingPolicy extends DefaultLoadErrorHandlingPolicy {
+
+    @Override
+    public long getRetryDelayMsFor(int dataType, long loadDurationMs, IOException exception, int errorCount) {
+        // Retrying would only fail again, reports the error right away
+        if(OfflineDataSource.isCausedByOffline(exception)) return C.TIME_UNSET;
+
+        return super.getRetryDelayMsFor(dataType, loadDurationMs, exception, errorCount);
+    }
+
+}
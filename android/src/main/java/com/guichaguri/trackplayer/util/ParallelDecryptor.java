@@ -0,0 +1,116 @@
+package com.guichaguri.trackplayer.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decrypts large reads by splitting them into chunks that are decrypted on a bounded pool of workers.
+ *
+ * Only {@link SplittableCipherContext}s are split, any other context decrypts on the calling thread.
+ */
+public final class ParallelDecryptor {
+
+    /**
+     * The smallest amount of bytes decrypted by each task, so reads need at least twice that to be split
+     */
+    public static final int MIN_CHUNK_SIZE = 16 * 1024;
+
+    // Chunk sizes are a multiple of it, and chunks are aligned to their size in the file
+    private static final int ALIGNMENT = 4 * 1024;
+
+    // The calling thread decrypts a chunk as well
+    private static final int WORKERS = Math.min(Runtime.getRuntime().availableProcessors() - 1, 4);
+
+    private static ThreadPoolExecutor executor;
+
+    private ParallelDecryptor() {}
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if(executor == null) {
+            executor = new ThreadPoolExecutor(WORKERS, WORKERS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "TrackPlayer-Decryptor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // Releases the workers when nothing is being decrypted
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /**
+     * Decrypts the data in place, splitting it between the workers when it's large enough
+     *
+     * @param position The absolute position in the file of the first byte
+     */
+    public static void decrypt(CipherContext cipher, byte[] buffer, int offset, int length, long position) {
+        if(WORKERS < 1 || length < MIN_CHUNK_SIZE * 2 || !(cipher instanceof SplittableCipherContext)) {
+            cipher.decrypt(buffer, offset, length, position);
+            return;
+        }
+
+        ThreadPoolExecutor executor = getExecutor();
+        List<Future<?>> tasks = new ArrayList<>();
+
+        // Splits the read between the workers and this thread, so a single block is also split
+        int chunkSize = getChunkSize(length);
+
+        // The first chunk ends at the next aligned position and is decrypted by this thread
+        int first = (int)Math.min(chunkSize - position % chunkSize, length);
+
+        for(int start = first; start < length; start += chunkSize) {
+            final int chunkOffset = offset + start;
+            final int chunkLength = Math.min(chunkSize, length - start);
+            final long chunkPosition = position + start;
+
+            tasks.add(executor.submit(() -> cipher.decrypt(buffer, chunkOffset, chunkLength, chunkPosition)));
+        }
+
+        RuntimeException error = null;
+
+        try {
+            cipher.decrypt(buffer, offset, first, position);
+        } catch(RuntimeException ex) {
+            error = ex;
+        }
+
+        // Every chunk has to finish before the buffer is handed back, even when interrupted
+        boolean interrupted = false;
+
+        for(Future<?> task : tasks) {
+            while(true) {
+                try {
+                    task.get();
+                    break;
+                } catch(InterruptedException ex) {
+                    interrupted = true;
+                } catch(ExecutionException ex) {
+                    if(error == null) {
+                        Throwable cause = ex.getCause();
+                        error = cause instanceof RuntimeException ? (RuntimeException)cause : new IllegalStateException(cause);
+                    }
+                    break;
+                }
+            }
+        }
+
+        if(interrupted) Thread.currentThread().interrupt();
+        if(error != null) throw error;
+    }
+
+    private static int getChunkSize(int length) {
+        int parts = WORKERS + 1;
+        int size = (length + parts - 1) / parts;
+
+        // Rounds up to the alignment
+        size = (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+
+        return Math.max(size, MIN_CHUNK_SIZE);
+    }
+
+}
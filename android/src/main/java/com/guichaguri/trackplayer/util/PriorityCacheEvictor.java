@@ -0,0 +1,192 @@
+package com.guichaguri.trackplayer.util;
+
+import android.util.Log;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.CacheSpan;
+import com.guichaguri.trackplayer.service.Utils;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link CacheEvictor} that evicts whole cache keys using Greedy-Dual-Size-Frequency.
+ *
+ * Each key is scored by how many times it was played, weighted by its priority and divided by its size.
+ * Plays are reported through {@link #onAccess(String)}, as the amount of spans read depends on the file size.
+ * The key with the lowest score is evicted first, and the score of every new access starts from
+ * the score of the last evicted key, so content that stopped being played slowly ages out.
+ * Pinned keys are never evicted.
+ */
+public final class PriorityCacheEvictor implements CacheEvictor {
+
+    private final long maxBytes;
+    private final CacheStats stats;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Set<String> pinned = new HashSet<>();
+    private final Map<String, Float> priorities = new HashMap<>();
+
+    private long currentSize = 0;
+    private double inflation = 0;
+
+    public PriorityCacheEvictor(long maxBytes, CacheStats stats) {
+        this.maxBytes = maxBytes;
+        this.stats = stats;
+    }
+
+    public synchronized void setPinned(Collection<String> keys, boolean pin) {
+        if(pin) {
+            pinned.addAll(keys);
+        } else {
+            pinned.removeAll(keys);
+        }
+    }
+
+    public synchronized boolean isPinned(String key) {
+        return pinned.contains(key);
+    }
+
+    /**
+     * Sets how much a key is worth keeping, where 1 is the default
+     */
+    public synchronized void setPriority(String key, float priority) {
+        if(priority == 1) {
+            priorities.remove(key);
+        } else {
+            priorities.put(key, priority);
+        }
+
+        Entry entry = entries.get(key);
+        if(entry != null) entry.updateScore();
+    }
+
+    /**
+     * Counts a play of the content stored under the key.
+     * Keys with nothing cached yet are ignored, so their first play counts once their content is written
+     */
+    public synchronized void onAccess(String key) {
+        Entry entry = entries.get(key);
+        if(entry != null) entry.access();
+    }
+
+    @Override
+    public boolean requiresCacheSpanTouches() {
+        return false;
+    }
+
+    @Override
+    public void onCacheInitialized() {
+        // Do nothing.
+    }
+
+    @Override
+    public synchronized void onStartFile(Cache cache, String key, long position, long length) {
+        if(length != C.LENGTH_UNSET) evictCache(cache, length, key);
+    }
+
+    @Override
+    public synchronized void onSpanAdded(Cache cache, CacheSpan span) {
+        Entry entry = getEntry(span.key);
+
+        entry.size += span.length;
+        entry.updateScore();
+        currentSize += span.length;
+
+        evictCache(cache, 0, span.key);
+    }
+
+    @Override
+    public synchronized void onSpanRemoved(Cache cache, CacheSpan span) {
+        Entry entry = entries.get(span.key);
+        currentSize -= span.length;
+
+        if(entry == null) return;
+
+        entry.size -= span.length;
+        if(entry.size <= 0) entries.remove(span.key);
+    }
+
+    @Override
+    public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+        // Accesses are counted per play instead
+    }
+
+    private Entry getEntry(String key) {
+        Entry entry = entries.get(key);
+
+        if(entry == null) {
+            entry = new Entry(key);
+            entries.put(key, entry);
+        }
+
+        return entry;
+    }
+
+    private void evictCache(Cache cache, long requiredSpace, String currentKey) {
+        // Keys that couldn't be fully removed in this pass, they're still tracked as their bytes are still cached
+        Set<String> failed = new HashSet<>();
+
+        while(currentSize + requiredSpace > maxBytes) {
+            Entry victim = null;
+
+            for(Entry entry : entries.values()) {
+                if(entry.size <= 0 || entry.key.equals(currentKey) || pinned.contains(entry.key)) continue;
+                if(failed.contains(entry.key)) continue;
+                if(victim == null || entry.score < victim.score) victim = entry;
+            }
+
+            // Everything left is either pinned or being written
+            if(victim == null) return;
+
+            inflation = victim.score;
+
+            // Removing the spans calls onSpanRemoved, which updates the sizes
+            for(CacheSpan span : new ArrayList<>(cache.getCachedSpans(victim.key))) {
+                try {
+                    cache.removeSpan(span);
+                    stats.onEviction();
+                } catch(Cache.CacheException ex) {
+                    Log.w(Utils.LOG, "Couldn't evict " + victim.key, ex);
+                }
+            }
+
+            // Makes sure we don't loop forever when a span couldn't be removed
+            if(entries.containsKey(victim.key)) failed.add(victim.key);
+        }
+    }
+
+    private class Entry {
+
+        final String key;
+        long size = 0;
+        long frequency = 0;
+        double base;
+        double score = 0;
+
+        Entry(String key) {
+            this.key = key;
+            this.base = inflation;
+        }
+
+        void access() {
+            frequency++;
+            base = inflation;
+            updateScore();
+        }
+
+        void updateScore() {
+            Float priority = priorities.get(key);
+            double kilobytes = Math.max(size / 1024D, 1);
+
+            // Content that was cached but never played, such as prefetched tracks, counts as a single play
+            score = base + Math.max(frequency, 1) * (priority == null ? 1 : priority) / kilobytes;
+        }
+
+    }
+
+}
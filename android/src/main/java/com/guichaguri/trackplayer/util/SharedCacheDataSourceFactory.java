@@ -0,0 +1,57 @@
+package com.guichaguri.trackplayer.util;
+
+import android.support.annotation.Nullable;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.FileDataSource;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.guichaguri.trackplayer.service.metadata.SimpleCacheManager;
+
+/**
+ * A {@link DataSource.Factory} that reads through the shared cache once it's ready,
+ * and straight from the upstream until then.
+ *
+ * Downloaded content is read first from the download cache, which is never written by playback.
+ */
+public final class SharedCacheDataSourceFactory implements DataSource.Factory {
+
+    private final DataSource.Factory upstreamFactory;
+    private final int flags;
+    private final long maxCacheFileSize;
+    private final CacheKeyNormalizer normalizer;
+
+    /**
+     * @param normalizer Builds the keys of requests without a custom cache key, or {@code null} to key them by uri
+     */
+    public SharedCacheDataSourceFactory(DataSource.Factory upstreamFactory, int flags, long maxCacheFileSize,
+                                        @Nullable CacheKeyNormalizer normalizer) {
+        this.upstreamFactory = upstreamFactory;
+        this.flags = flags;
+        this.maxCacheFileSize = maxCacheFileSize;
+        this.normalizer = normalizer;
+    }
+
+    @Override
+    public DataSource createDataSource() {
+        Cache cache = SimpleCacheManager.INSTANCE.getCache();
+        Cache downloads = SimpleCacheManager.INSTANCE.getDownloadCache();
+        DataSource upstream = upstreamFactory.createDataSource();
+
+        if(cache == null) return upstream;
+
+        CacheStatsDataSource stats = new CacheStatsDataSource(SimpleCacheManager.INSTANCE.getStats());
+        stats.setCacheSource(new CacheDataSource(cache, stats.wrapUpstream(upstream), flags, maxCacheFileSize));
+
+        // Only the streaming cache is keyed by the normalizer,
+        // downloads store adaptive playlists and segments under their raw urls
+        DataSource ds = normalizer == null ? stats : new CacheKeyDataSource(stats, normalizer);
+
+        if(downloads != null) {
+            // Read only, anything that wasn't downloaded goes through the shared cache
+            ds = new CacheDataSource(downloads, ds, new FileDataSource(), null, flags, null);
+        }
+
+        return ds;
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.guichaguri.trackplayer.util;
+
+import com.facebook.react.modules.network.OkHttpClientProvider;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * Holds the {@link OkHttpClient} shared by every remote track in the process
+ *
+ * The client is derived from the React Native one, so the connection pool is also shared with the app requests
+ * unless a custom pool is configured.
+ */
+public final class SharedHttpClient {
+
+    private static OkHttpClient client;
+    private static int poolConnections;
+    private static long poolKeepAlive;
+
+    private SharedHttpClient() {
+
+    }
+
+    /**
+     * Gets the shared client, creating it with the given pool configuration if it doesn't exist yet
+     *
+     * When the pool configuration differs from the one used by the current client, the client is rebuilt
+     * with the new pool. Sources that were already created keep using the previous client.
+     *
+     * @param maxIdleConnections The maximum amount of idle connections to keep, or 0 to use the React Native pool
+     * @param keepAlive The time in seconds an idle connection is kept
+     */
+    public static synchronized OkHttpClient get(int maxIdleConnections, long keepAlive) {
+        if(client != null) {
+            if(maxIdleConnections == poolConnections && (maxIdleConnections <= 0 || keepAlive == poolKeepAlive)) {
+                return client;
+            }
+
+            // Closes the idle connections of the previous custom pool, the React Native one is left untouched
+            if(poolConnections > 0) client.connectionPool().evictAll();
+
+            client = client.newBuilder()
+                    .connectionPool(createPool(maxIdleConnections, keepAlive))
+                    .build();
+        } else {
+            client = OkHttpClientProvider.getOkHttpClient().newBuilder()
+                    .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                    .connectTimeout(DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                    .readTimeout(DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                    .followRedirects(true)
+                    .followSslRedirects(true)
+                    .connectionPool(createPool(maxIdleConnections, keepAlive))
+                    .build();
+        }
+
+        poolConnections = maxIdleConnections;
+        poolKeepAlive = keepAlive;
+        return client;
+    }
+
+    private static ConnectionPool createPool(int maxIdleConnections, long keepAlive) {
+        if(maxIdleConnections > 0) {
+            return new ConnectionPool(maxIdleConnections, keepAlive, TimeUnit.SECONDS);
+        } else {
+            return OkHttpClientProvider.getOkHttpClient().connectionPool();
+        }
+    }
+
+}
@@ -0,0 +1,11 @@
+package com.guichaguri.trackplayer.util;
+
+/**
+ * A {@link CipherContext} that can decrypt independent ranges of the same read at the same time.
+ *
+ * Besides the thread reading the file, {@link #decrypt(byte[], int, int, long)} might be called concurrently
+ * from the decryption workers, always for ranges that don't overlap.
+ */
+public interface SplittableCipherContext extends CipherContext {
+
+}
@@ -0,0 +1,81 @@
+package com.guichaguri.trackplayer.util;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link DataSource} that limits how fast another one can be read.
+ */
+public final class ThrottledDataSource implements DataSource {
+
+    private final DataSource upstream;
+    private final long bytesPerSecond;
+
+    private long startTime;
+    private long bytesRead;
+
+    /**
+     * @param upstream The data source to read from
+     * @param bytesPerSecond The maximum average speed
+     */
+    public ThrottledDataSource(DataSource upstream, long bytesPerSecond) {
+        this.upstream = upstream;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+        upstream.addTransferListener(transferListener);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        startTime = SystemClock.elapsedRealtime();
+        bytesRead = 0;
+        return upstream.open(dataSpec);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        // Waits until reading more bytes is within the limit
+        long wait = bytesRead * 1000 / bytesPerSecond - (SystemClock.elapsedRealtime() - startTime);
+
+        if(wait > 0) {
+            try {
+                Thread.sleep(wait);
+            } catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        int read = upstream.read(buffer, offset, readLength);
+        if(read > 0) bytesRead += read;
+        return read;
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+        return upstream.getUri();
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+        return upstream.getResponseHeaders();
+    }
+
+    @Override
+    public void close() throws IOException {
+        upstream.close();
+    }
+
+}
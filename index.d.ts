@@ -9,6 +9,8 @@ declare namespace RNTrackPlayer {
     | "playback-error"
     | "playback-queue-ended"
     | "playback-track-changed"
+    | "playback-progress"
+    | "download-state"
     | "remote-play"
     | "remote-play-id"
     | "remote-play-search"
@@ -51,6 +53,8 @@ declare namespace RNTrackPlayer {
     type?: TrackType;
     userAgent?: string;
     contentType?: string;
+    cacheKey?: string;
+    cachePriority?: number;
     duration?: number;
     title: string;
     artist: string;
@@ -69,6 +73,23 @@ declare namespace RNTrackPlayer {
     maxBuffer?: number;
     playBuffer?: number;
     maxCacheSize?: number;
+    lazyLoad?: boolean;
+    lazyLoadWindow?: number;
+    networkEngine?: 'default' | 'okhttp';
+    connectionPoolSize?: number;
+    connectionKeepAlive?: number;
+    prefetchCount?: number;
+    prefetchSize?: number;
+    prefetchBandwidth?: number;
+    cacheKeyIgnoredParams?: string[];
+    maxConcurrentDownloads?: number;
+    offlineMode?: boolean | 'auto';
+    decryptionIoMode?: 'direct' | 'buffered' | 'mapped';
+    decryptionBlockSize?: number;
+    parallelDecryption?: boolean;
+    decryptedCacheSize?: number;
+    eventCoalescingWindow?: number;
+    progressUpdateInterval?: number;
     iosCategory?: 'playback' | 'playAndRecord' | 'multiRoute' | 'ambient' | 'soloAmbient' | 'record';
     iosCategoryOptions?: 'mixWithOthers' | 'duckOthers' | 'interruptSpokenAudioAndMixWithOthers' | 'allowBluetooth' | 'allowBluetoothA2DP' | 'allowAirPlay' | 'defaultToSpeaker';
     iosCategoryMode?: 'default' | 'gameChat' | 'measurement' | 'moviePlayback' | 'spokenAudio' | 'videoChat' | 'videoRecording' | 'voiceChat' | 'voicePrompt';
@@ -104,6 +125,7 @@ declare namespace RNTrackPlayer {
 
   export function add(tracks: Track | Track[], insertBeforeId?: string): Promise<void>;
   export function remove(trackIds: string | string[]): Promise<void>;
+  export function setQueue(tracks: Track | Track[], startIndex?: number, startPosition?: number): Promise<void>;
   export function skip(trackId: string): Promise<void>;
   export function skipToNext(): Promise<void>;
   export function skipToPrevious(): Promise<void>;
@@ -119,6 +141,18 @@ declare namespace RNTrackPlayer {
   export function setVolume(level: number): Promise<void>;
   export function setRate(rate: number): Promise<void>;
 
+  export type BatchCommand =
+    | { command: 'add'; tracks: Track | Track[]; insertBeforeId?: string }
+    | { command: 'remove'; tracks: string | string[] }
+    | { command: 'setQueue'; tracks: Track | Track[]; startIndex?: number; startPosition?: number }
+    | { command: 'skip'; id: string }
+    | { command: 'seekTo'; position: number }
+    | { command: 'setVolume'; volume: number }
+    | { command: 'setRate'; rate: number }
+    | { command: 'removeUpcomingTracks' | 'skipToNext' | 'skipToPrevious' | 'reset' | 'play' | 'pause' | 'stop' };
+
+  export function executeBatch(commands: BatchCommand[]): Promise<void>;
+
   // Player Getters
 
   export function getQueue(): Promise<Track[]>;
@@ -131,6 +165,40 @@ declare namespace RNTrackPlayer {
   export function getState(): Promise<State>;
   export function getRate(): Promise<number>;
 
+  export interface PlaybackSnapshot {
+    timestamp: number;
+    state: State;
+    track: string | null;
+    position: number;
+    bufferedPosition: number;
+    duration: number;
+    rate: number;
+    volume: number;
+  }
+
+  export function getPlaybackSnapshot(): Promise<PlaybackSnapshot>;
+
+  // Cache
+
+  export interface CacheStats {
+    bytesFromCache: number;
+    bytesFromNetwork: number;
+    hits: number;
+    misses: number;
+    evictions: number;
+    cacheSize: number;
+    maxCacheSize: number;
+    tracks: { [key: string]: { hits: number; misses: number; } };
+  }
+
+  export function getCacheStats(): Promise<CacheStats>;
+  export function pinCache(trackIds: string | string[]): Promise<void>;
+  export function unpinCache(trackIdsOrCacheKeys: string | string[]): Promise<void>;
+  export function download(trackIds: string | string[]): Promise<void>;
+  export function removeDownload(trackIds: string | string[]): Promise<void>;
+  export function getDownloads(): Promise<{ [trackId: string]: string }>;
+  export function setOfflineMode(mode: boolean | 'auto'): Promise<void>;
+
   // Components
 
   export interface ProgressComponentState {
@@ -144,6 +212,12 @@ declare namespace RNTrackPlayer {
     public getBufferedProgress: () => number;
   }
 
+  export class PositionTracker {
+    public update(data: any): void;
+    public getPosition(): number;
+    public sync(): Promise<void>;
+  }
+
   // Constants
 
   export const STATE_NONE: State;
@@ -0,0 +1,120 @@
+import TrackPlayer from './index.js';
+
+// How often the clock offset is estimated again, as the clocks may drift apart
+const SYNC_INTERVAL = 5 * 60 * 1000;
+
+/**
+ * Estimates the current position from the last known one, without calling the native side
+ *
+ * Feed it the `playback-state`, `playback-track-changed` and `playback-progress` events, or the result
+ * of `getPlaybackSnapshot()`. While playing, the position advances locally at the playback speed,
+ * so a progress bar can be animated every frame with only one native event per state change.
+ *
+ * The position is extrapolated from the native timestamp of the data, so the bridge latency and the
+ * event coalescing window don't make it lag behind. The offset between the native and the JS clocks
+ * is estimated from a `getPlaybackSnapshot()` round trip.
+ */
+class PositionTracker {
+
+    constructor() {
+        this._position = 0;
+        this._rate = 1;
+        this._state = TrackPlayer.STATE_NONE;
+        this._timestamp = -1;
+        this._updatedAt = Date.now();
+
+        // Native clock minus the JS clock, in milliseconds
+        this._clockOffset = null;
+        this._roundTrip = Infinity;
+        this._syncedAt = 0;
+        this._syncing = false;
+    }
+
+    /**
+     * Estimates the offset between the native and the JS clocks.
+     * It's called automatically by `update`, but can be awaited to have it ready beforehand
+     * @return {Promise<void>}
+     */
+    async sync() {
+        if(this._syncing || !TrackPlayer.getPlaybackSnapshot) return;
+        this._syncing = true;
+
+        try {
+            const start = Date.now();
+            const snapshot = await TrackPlayer.getPlaybackSnapshot();
+            const end = Date.now();
+
+            // Keeps the estimate with the shortest round trip, as it's the most accurate one
+            const roundTrip = end - start;
+            const expired = end - this._syncedAt > SYNC_INTERVAL;
+
+            if(snapshot && snapshot.timestamp !== undefined && (roundTrip <= this._roundTrip || expired)) {
+                this._clockOffset = snapshot.timestamp - (start + end) / 2;
+                this._roundTrip = roundTrip;
+                this._syncedAt = end;
+            }
+
+            this.update(snapshot);
+        } catch(e) {
+            // Keeps extrapolating from the time the data was received until the next attempt
+            this._syncedAt = Date.now();
+        } finally {
+            this._syncing = false;
+        }
+    }
+
+    /**
+     * Updates the tracker with an event or a snapshot
+     * @param {object} data
+     */
+    update(data) {
+        if(!data || data.timestamp === undefined) return;
+
+        if(Date.now() - this._syncedAt > SYNC_INTERVAL) this.sync();
+
+        // Ignores data older than what we already have
+        if(data.timestamp < this._timestamp) return;
+
+        this._timestamp = data.timestamp;
+        this._updatedAt = Date.now();
+
+        const position = data.nextPosition !== undefined ? data.nextPosition : data.position;
+        if(position !== undefined) this._position = position;
+        if(data.rate !== undefined) this._rate = data.rate;
+
+        if(data.state !== undefined && this._isKnownState(data.state)) {
+            this._state = data.state;
+        } else if(data.bufferedPosition !== undefined && data.state === undefined) {
+            // Progress events are only sent while playing
+            this._state = TrackPlayer.STATE_PLAYING;
+        }
+    }
+
+    /**
+     * Gets the estimated position in seconds
+     * @return {number}
+     */
+    getPosition() {
+        if(this._state !== TrackPlayer.STATE_PLAYING) return this._position;
+
+        let elapsed;
+
+        if(this._clockOffset !== null) {
+            // Native time elapsed since the position was read
+            elapsed = Math.max(Date.now() + this._clockOffset - this._timestamp, 0);
+        } else {
+            elapsed = Date.now() - this._updatedAt;
+        }
+
+        return this._position + elapsed / 1000 * this._rate;
+    }
+
+    _isKnownState(state) {
+        return state === TrackPlayer.STATE_NONE || state === TrackPlayer.STATE_PLAYING ||
+            state === TrackPlayer.STATE_PAUSED || state === TrackPlayer.STATE_STOPPED ||
+            state === TrackPlayer.STATE_BUFFERING;
+    }
+
+}
+
+module.exports = PositionTracker;
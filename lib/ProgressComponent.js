@@ -14,22 +14,42 @@ class ProgressComponent extends Component {
 
     componentDidMount() {
         this._progressUpdates = true;
+        this._lastProgressEvent = 0;
+        this._progressListener = TrackPlayer.addEventListener('playback-progress', this._onProgress.bind(this));
         this._updateProgress();
         this._timer = setInterval(this._updateProgress.bind(this), 1000);
     }
 
     componentWillUnmount() {
         this._progressUpdates = false;
+        this._progressListener.remove();
         clearInterval(this._timer);
     }
 
+    /**
+     * Updates the progress state from the native progress events
+     * @private
+     */
+    _onProgress(data) {
+        this._lastProgressEvent = Date.now();
+
+        if(this._progressUpdates) {
+            this.setState({
+                position: data.position,
+                bufferedPosition: data.bufferedPosition,
+                duration: data.duration
+            });
+        }
+    }
+
     /**
      * Updates the progress state
      * @private
      */
     async _updateProgress() {
-        // TODO check for performance here
-        // We can create a new native function to reduces these 3 native calls to only one, if needed
+        // Polling isn't needed while the progress events keep arriving
+        if(Date.now() - this._lastProgressEvent < 1000) return;
+
         try {
             const data = {
                 position: await TrackPlayer.getPosition(),
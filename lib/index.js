@@ -4,6 +4,15 @@ import resolveAssetSource from 'react-native/Libraries/Image/resolveAssetSource'
 const { TrackPlayerModule: TrackPlayer } = NativeModules;
 const emitter = Platform.OS !== 'android' ? new NativeEventEmitter(TrackPlayer) : DeviceEventEmitter;
 
+if(Platform.OS === 'android') {
+    // Events coalesced by the native side arrive in batches, dispatches each one separately
+    emitter.addListener('playback-batch', (data) => {
+        for(let i = 0; i < data.events.length; i++) {
+            emitter.emit(data.events[i].type, data.events[i].data);
+        }
+    });
+}
+
 function resolveAsset(uri) {
     if(!uri) return undefined;
     return resolveAssetSource(uri);
@@ -35,7 +44,7 @@ function updateOptions(data) {
     return TrackPlayer.updateOptions(data);
 }
 
-function add(tracks, insertBeforeId) {
+function prepareTracks(tracks) {
     if(!Array.isArray(tracks)) {
         tracks = [tracks];
     }
@@ -52,7 +61,32 @@ function add(tracks, insertBeforeId) {
         tracks[i].id = `${tracks[i].id}`
     }
 
-    return TrackPlayer.add(tracks, insertBeforeId);
+    return tracks;
+}
+
+function add(tracks, insertBeforeId) {
+    return TrackPlayer.add(prepareTracks(tracks), insertBeforeId);
+}
+
+async function setQueue(tracks, startIndex = 0, startPosition) {
+    tracks = prepareTracks(tracks);
+
+    if(Platform.OS === 'android') {
+        return TrackPlayer.setQueue(tracks, startIndex, startPosition == null ? -1 : startPosition);
+    }
+
+    if(startIndex < 0 || startIndex >= tracks.length) {
+        // Matches the native rejection
+        const error = new Error('The start index is out of the queue bounds');
+        error.code = 'invalid_index';
+        throw error;
+    }
+
+    // Fallback for platforms without a native implementation
+    await TrackPlayer.reset();
+    await TrackPlayer.add(tracks, null);
+    if(startIndex > 0) await TrackPlayer.skip(tracks[startIndex].id);
+    if(startPosition != null) await TrackPlayer.seekTo(startPosition);
 }
 
 function remove(tracks) {
@@ -63,6 +97,89 @@ function remove(tracks) {
     return TrackPlayer.remove(tracks);
 }
 
+function pinCache(tracks) {
+    if(!Array.isArray(tracks)) {
+        tracks = [tracks];
+    }
+
+    return TrackPlayer.pinCache(tracks);
+}
+
+function unpinCache(tracks) {
+    if(!Array.isArray(tracks)) {
+        tracks = [tracks];
+    }
+
+    return TrackPlayer.unpinCache(tracks);
+}
+
+function download(tracks) {
+    if(!Array.isArray(tracks)) {
+        tracks = [tracks];
+    }
+
+    return TrackPlayer.download(tracks);
+}
+
+function removeDownload(tracks) {
+    if(!Array.isArray(tracks)) {
+        tracks = [tracks];
+    }
+
+    return TrackPlayer.removeDownload(tracks);
+}
+
+async function executeCommands(commands) {
+    // Fallback for platforms without a native implementation, which runs each command separately
+    for(let i = 0; i < commands.length; i++) {
+        const command = commands[i];
+
+        switch(command.command) {
+            case 'add': await add(command.tracks, command.insertBeforeId); break;
+            case 'setQueue': await setQueue(command.tracks, command.startIndex, command.startPosition); break;
+            case 'remove': await remove(command.tracks); break;
+            case 'removeUpcomingTracks': await TrackPlayer.removeUpcomingTracks(); break;
+            case 'skip': await TrackPlayer.skip(command.id); break;
+            case 'skipToNext': await TrackPlayer.skipToNext(); break;
+            case 'skipToPrevious': await TrackPlayer.skipToPrevious(); break;
+            case 'reset': await TrackPlayer.reset(); break;
+            case 'play': await TrackPlayer.play(); break;
+            case 'pause': await TrackPlayer.pause(); break;
+            case 'stop': await TrackPlayer.stop(); break;
+            case 'seekTo': await TrackPlayer.seekTo(command.position); break;
+            case 'setVolume': await TrackPlayer.setVolume(command.volume); break;
+            case 'setRate': await TrackPlayer.setRate(command.rate); break;
+            default: {
+                // Matches the native rejection
+                const error = new Error(`Unknown command: ${command.command}`);
+                error.code = 'invalid_command';
+                throw error;
+            }
+        }
+    }
+}
+
+function executeBatch(commands) {
+    if(!TrackPlayer.executeBatch) {
+        return executeCommands(commands);
+    }
+
+    commands = commands.map((command) => {
+        if(command.command === 'add' || command.command === 'setQueue') {
+            return { ...command, tracks: prepareTracks(command.tracks) };
+        } else if(command.command === 'remove' && !Array.isArray(command.tracks)) {
+            return { ...command, tracks: [command.tracks] };
+        }
+        return command;
+    });
+
+    return TrackPlayer.executeBatch(commands);
+}
+
+function setOfflineMode(mode) {
+    return TrackPlayer.setOfflineMode(mode === 'auto', mode === true);
+}
+
 function registerPlaybackService(serviceFactory) {
     if (Platform.OS === 'android') {
         // Registers the headless task
@@ -165,6 +282,7 @@ module.exports.addEventListener = addEventListener;
 // Player Queue Commands
 module.exports.add = add;
 module.exports.remove = remove;
+module.exports.setQueue = setQueue;
 module.exports.skip = TrackPlayer.skip;
 module.exports.getQueue = TrackPlayer.getQueue;
 module.exports.skipToNext = TrackPlayer.skipToNext;
@@ -179,6 +297,7 @@ module.exports.stop = TrackPlayer.stop;
 module.exports.seekTo = TrackPlayer.seekTo;
 module.exports.setVolume = TrackPlayer.setVolume;
 module.exports.setRate = TrackPlayer.setRate;
+module.exports.executeBatch = executeBatch;
 
 // Player Getters
 module.exports.getTrack = TrackPlayer.getTrack;
@@ -189,6 +308,17 @@ module.exports.getPosition = TrackPlayer.getPosition;
 module.exports.getBufferedPosition = TrackPlayer.getBufferedPosition;
 module.exports.getState = TrackPlayer.getState;
 module.exports.getRate = TrackPlayer.getRate;
+module.exports.getPlaybackSnapshot = TrackPlayer.getPlaybackSnapshot;
+
+// Cache
+module.exports.getCacheStats = TrackPlayer.getCacheStats;
+module.exports.pinCache = pinCache;
+module.exports.unpinCache = unpinCache;
+module.exports.download = download;
+module.exports.removeDownload = removeDownload;
+module.exports.getDownloads = TrackPlayer.getDownloads;
+module.exports.setOfflineMode = setOfflineMode;
 
 // Components
 module.exports.ProgressComponent = require('./ProgressComponent');
+module.exports.PositionTracker = require('./PositionTracker');